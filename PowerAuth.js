@@ -40,8 +40,15 @@ import { NativeModules, Platform } from 'react-native';
  */
 var PowerAuth = /** @class */ (function () {
     function PowerAuth() {
-        this.nativeModule = NativeModules.PowerAuth;
     }
+    Object.defineProperty(PowerAuth.prototype, "nativeModule", {
+        /** Native module is looked up on the first use, so it's not created during the application startup. */
+        get: function () {
+            return NativeModules.PowerAuth;
+        },
+        enumerable: false,
+        configurable: true
+    });
     /** If the PowerAuth module was configured. */
     PowerAuth.prototype.isConfigured = function () {
         return this.nativeModule.isConfigured();
@@ -275,6 +282,12 @@ var PowerAuth = /** @class */ (function () {
     PowerAuth.prototype.removeBiometryFactor = function () {
         return this.nativeModule.removeBiometryFactor();
     };
+    /**
+     * Checks if the biometric authentication can be used on the device.
+     */
+    PowerAuth.prototype.isBiometryAvailable = function () {
+        return this.nativeModule.isBiometryAvailable();
+    };
     /**
      * Generate a derived encryption key with given index.
      * The key is returned in form of base64 encoded string.
@@ -375,6 +388,89 @@ var PowerAuth = /** @class */ (function () {
             });
         });
     };
+    /**
+     * Returns statistics of the queue that limits the number of concurrent PowerAuth network operations.
+     * The queue is implemented only on Android, on other platforms the returned promise resolves to null.
+     */
+    PowerAuth.prototype.getOperationQueueStats = function () {
+        if (Platform.OS == "android") {
+            return this.nativeModule.operationQueueStats();
+        }
+        return Promise.resolve(null);
+    };
+    /**
+     * Exports the log of recently finished PowerAuth operations as a JSON string. The log contains
+     * operation names, timing, error codes, whether a call was merged into another one with the same arguments and the activation state, but no secrets.
+     * The log is implemented only on Android, on other platforms the returned promise resolves to null.
+     */
+    PowerAuth.prototype.exportTrace = function () {
+        if (Platform.OS == "android") {
+            return this.nativeModule.exportTrace();
+        }
+        return Promise.resolve(null);
+    };
+    /**
+     * Starts a signature session for a request body that is passed to the native code in several parts.
+     * Use `appendBody` or `appendBodyFromFile` to provide the body and `finishSignature` to compute the header.
+     * This way, a large body doesn't have to be kept in a single Javascript string.
+     * A session that is not used for 5 minutes expires, and all sessions are dropped when the Javascript context is reloaded.
+     *
+     * @param authentication An authentication instance specifying what factors should be used to sign the request.
+     * @param method HTTP method used for the signature computation.
+     * @param uriId URI identifier.
+     * @param bodySize Optional size of the whole body in bytes, when it's known. The native code then allocates the body only once.
+     * @return Identifier of the signature session.
+     */
+    PowerAuth.prototype.beginSignature = function (authentication, method, uriId, bodySize) {
+        return __awaiter(this, void 0, void 0, function () {
+            var _a, _b;
+            return __generator(this, function (_c) {
+                switch (_c.label) {
+                    case 0:
+                        _b = (_a = this.nativeModule).beginSignature;
+                        return [4 /*yield*/, this.processAuthentication(authentication)];
+                    case 1: return [2 /*return*/, _b.apply(_a, [_c.sent(), method, uriId, bodySize || 0])];
+                }
+            });
+        });
+    };
+    /**
+     * Appends a part of the HTTP request body to the signature session.
+     * The signed body is the UTF-8 encoding of all parts joined together, so a string can be split
+     * at any index, even between the two halves of a surrogate pair. The joined parts must be a valid UTF-16 string.
+     *
+     * @param sessionId Identifier of the signature session.
+     * @param chunk Part of the HTTP request body.
+     */
+    PowerAuth.prototype.appendBody = function (sessionId, chunk) {
+        return this.nativeModule.appendBody(sessionId, chunk);
+    };
+    /**
+     * Appends content of a local file to the HTTP request body of the signature session. The file is read by the native code.
+     *
+     * @param sessionId Identifier of the signature session.
+     * @param fileUri Local file URI (`file://` or, on Android, `content://`) or an absolute path to the file.
+     */
+    PowerAuth.prototype.appendBodyFromFile = function (sessionId, fileUri) {
+        return this.nativeModule.appendBodyFromFile(sessionId, fileUri);
+    };
+    /**
+     * Computes the HTTP signature header for the collected HTTP request body and closes the signature session.
+     *
+     * @param sessionId Identifier of the signature session.
+     * @return HTTP header with PowerAuth authorization signature.
+     */
+    PowerAuth.prototype.finishSignature = function (sessionId) {
+        return this.nativeModule.finishSignature(sessionId);
+    };
+    /**
+     * Closes the signature session without computing the signature.
+     *
+     * @param sessionId Identifier of the signature session.
+     */
+    PowerAuth.prototype.cancelSignature = function (sessionId) {
+        return this.nativeModule.cancelSignature(sessionId);
+    };
     /**
      * Retrieves authenticaiton key for biometry.
      *
@@ -498,12 +594,15 @@ export { PowerAuthAuthentication };
 ;
 var PowerAuthError = /** @class */ (function () {
     function PowerAuthError(exception) {
-        var _a, _b, _c, _d, _e;
+        var _a, _b, _c, _d, _e, _f, _g, _h, _j, _k, _l;
         this.originalException = exception;
         this.code = (_a = exception === null || exception === void 0 ? void 0 : exception.code) !== null && _a !== void 0 ? _a : null;
         this.message = (_b = exception === null || exception === void 0 ? void 0 : exception.message) !== null && _b !== void 0 ? _b : null;
         this.domain = (_c = exception === null || exception === void 0 ? void 0 : exception.domain) !== null && _c !== void 0 ? _c : null;
         this.description = (_e = (_d = exception === null || exception === void 0 ? void 0 : exception.userInfo) === null || _d === void 0 ? void 0 : _d.NSLocalizedDescription) !== null && _e !== void 0 ? _e : null;
+        this.category = (_g = (_f = exception === null || exception === void 0 ? void 0 : exception.userInfo) === null || _f === void 0 ? void 0 : _f.category) !== null && _g !== void 0 ? _g : null;
+        this.retryable = (_j = (_h = exception === null || exception === void 0 ? void 0 : exception.userInfo) === null || _h === void 0 ? void 0 : _h.retryable) !== null && _j !== void 0 ? _j : null;
+        this.backoffMs = (_l = (_k = exception === null || exception === void 0 ? void 0 : exception.userInfo) === null || _k === void 0 ? void 0 : _k.backoffMs) !== null && _l !== void 0 ? _l : null;
     }
     PowerAuthError.prototype.print = function () {
         return "code: " + this.code + "\nmessage: " + this.message + "\ndomain: " + this.domain + "\ndescription: " + this.description;
@@ -560,6 +659,18 @@ export var PowerAuthErrorCode;
     /** Error code for a general error related to WatchConnectivity (iOS only) */
     PowerAuthErrorCode["PA2ErrorCodeWatchConnectivity"] = "PA2ErrorCodeWatchConnectivity";
 })(PowerAuthErrorCode || (PowerAuthErrorCode = {}));
+/** Category of the error reported by the native module. */
+export var PowerAuthErrorCategory;
+(function (PowerAuthErrorCategory) {
+    /** The operation may succeed when repeated, for example after the protocol upgrade finishes. */
+    PowerAuthErrorCategory["RETRYABLE"] = "retryable";
+    /** The server was not reachable or didn't respond properly. */
+    PowerAuthErrorCategory["NETWORK"] = "network";
+    /** Caused by the user, for example a wrong password or a canceled dialog. */
+    PowerAuthErrorCategory["USER"] = "user";
+    /** Repeating the operation won't help. */
+    PowerAuthErrorCategory["FATAL"] = "fatal";
+})(PowerAuthErrorCategory || (PowerAuthErrorCategory = {}));
 /**
  * The `PowerAuthOtpUtil` provides various set of methods for parsing and validating
  activation or recovery codes.
@@ -5,7 +5,10 @@ import { NativeModules, Platform } from 'react-native';
  */
 class PowerAuth {
 
-    private nativeModule = NativeModules.PowerAuth;
+    /** Native module is looked up on the first use, so it's not created during the application startup. */
+    private get nativeModule() {
+        return NativeModules.PowerAuth;
+    }
 
     /** If the PowerAuth module was configured. */
     isConfigured(): Promise<boolean> {
@@ -220,6 +223,13 @@ class PowerAuth {
         return this.nativeModule.removeBiometryFactor();
     }
 
+    /**
+     * Checks if the biometric authentication can be used on the device.
+     */
+    isBiometryAvailable(): Promise<boolean> {
+        return this.nativeModule.isBiometryAvailable();
+    }
+
     /** 
      * Generate a derived encryption key with given index.
      * The key is returned in form of base64 encoded string.
@@ -285,6 +295,86 @@ class PowerAuth {
         return this.nativeModule.confirmRecoveryCode(recoveryCode, await this.processAuthentication(authentication));
     }
 
+    /**
+     * Returns statistics of the queue that limits the number of concurrent PowerAuth network operations.
+     * The queue is implemented only on Android, on other platforms the returned promise resolves to null.
+     */
+    getOperationQueueStats(): Promise<PowerAuthOperationQueueStats> {
+        if (Platform.OS == "android") {
+            return this.nativeModule.operationQueueStats();
+        }
+        return Promise.resolve(null);
+    }
+
+    /**
+     * Exports the log of recently finished PowerAuth operations as a JSON string. The log contains
+     * operation names, timing, error codes, whether a call was merged into another one with the same arguments and the activation state, but no secrets.
+     * The log is implemented only on Android, on other platforms the returned promise resolves to null.
+     */
+    exportTrace(): Promise<string> {
+        if (Platform.OS == "android") {
+            return this.nativeModule.exportTrace();
+        }
+        return Promise.resolve(null);
+    }
+
+    /**
+     * Starts a signature session for a request body that is passed to the native code in several parts.
+     * Use `appendBody` or `appendBodyFromFile` to provide the body and `finishSignature` to compute the header.
+     * This way, a large body doesn't have to be kept in a single Javascript string.
+     * A session that is not used for 5 minutes expires, and all sessions are dropped when the Javascript context is reloaded.
+     * 
+     * @param authentication An authentication instance specifying what factors should be used to sign the request.
+     * @param method HTTP method used for the signature computation.
+     * @param uriId URI identifier.
+     * @param bodySize Optional size of the whole body in bytes, when it's known. The native code then allocates the body only once.
+     * @return Identifier of the signature session.
+     */
+    async beginSignature(authentication: PowerAuthAuthentication, method: string, uriId: string, bodySize?: number): Promise<string> {
+        return this.nativeModule.beginSignature(await this.processAuthentication(authentication), method, uriId, bodySize || 0);
+    }
+
+    /**
+     * Appends a part of the HTTP request body to the signature session.
+     * The signed body is the UTF-8 encoding of all parts joined together, so a string can be split
+     * at any index, even between the two halves of a surrogate pair. The joined parts must be a valid UTF-16 string.
+     * 
+     * @param sessionId Identifier of the signature session.
+     * @param chunk Part of the HTTP request body.
+     */
+    appendBody(sessionId: string, chunk: string): Promise<void> {
+        return this.nativeModule.appendBody(sessionId, chunk);
+    }
+
+    /**
+     * Appends content of a local file to the HTTP request body of the signature session. The file is read by the native code.
+     * 
+     * @param sessionId Identifier of the signature session.
+     * @param fileUri Local file URI (`file://` or, on Android, `content://`) or an absolute path to the file.
+     */
+    appendBodyFromFile(sessionId: string, fileUri: string): Promise<void> {
+        return this.nativeModule.appendBodyFromFile(sessionId, fileUri);
+    }
+
+    /**
+     * Computes the HTTP signature header for the collected HTTP request body and closes the signature session.
+     * 
+     * @param sessionId Identifier of the signature session.
+     * @return HTTP header with PowerAuth authorization signature.
+     */
+    finishSignature(sessionId: string): Promise<PowerAuthAuthorizationHttpHeader> {
+        return this.nativeModule.finishSignature(sessionId);
+    }
+
+    /**
+     * Closes the signature session without computing the signature.
+     * 
+     * @param sessionId Identifier of the signature session.
+     */
+    cancelSignature(sessionId: string): void {
+        return this.nativeModule.cancelSignature(sessionId);
+    }
+
     /**
      * Retrieves authenticaiton key for biometry.
      * 
@@ -322,6 +412,26 @@ export interface PowerAuthActivationStatus {
     remainingAttempts: number;
 }
 
+/**
+ * Statistics of the queue that limits the number of concurrent PowerAuth network operations.
+ */
+export interface PowerAuthOperationQueueStats {
+    /** Maximum number of operations running at the same time. */
+    maxConcurrentOperations: number;
+    /** Number of operations currently running. */
+    inFlight: number;
+    /** Number of operations waiting for a free slot. */
+    queued: number;
+    /** Number of operations started so far. */
+    admitted: number;
+    /** Number of calls merged into an already queued operation. */
+    coalesced: number;
+    /** Average time in milliseconds the started operations spent in the queue. */
+    averageWaitMs: number;
+    /** The longest time in milliseconds an operation spent in the queue. */
+    maxWaitMs: number;
+}
+
 /**
  * Class representing authorization HTTP header with the PowerAuth-Authorization or PowerAuth-Token signature.
  */
@@ -450,6 +560,12 @@ export class PowerAuthError {
     message?: string;
     domain?: string;
     description?: string;
+    /** (Android only) Category of the error, helps to decide whether the operation should be repeated. */
+    category?: PowerAuthErrorCategory;
+    /** (Android only) True when repeating the same call may succeed. */
+    retryable?: boolean;
+    /** (Android only) Suggested delay in milliseconds before the operation is repeated. */
+    backoffMs?: number;
 
     originalException: any;
 
@@ -459,6 +575,9 @@ export class PowerAuthError {
         this.message = exception?.message ?? null;
         this.domain = exception?.domain ?? null;
         this.description = exception?.userInfo?.NSLocalizedDescription ?? null;
+        this.category = exception?.userInfo?.category ?? null;
+        this.retryable = exception?.userInfo?.retryable ?? null;
+        this.backoffMs = exception?.userInfo?.backoffMs ?? null;
     }
 
     print(): string {
@@ -534,6 +653,22 @@ export enum PowerAuthErrorCode {
     PA2ErrorCodeWatchConnectivity = "PA2ErrorCodeWatchConnectivity"
 }
 
+/** Category of the error reported by the native module. */
+export enum PowerAuthErrorCategory {
+
+    /** The operation may succeed when repeated, for example after the protocol upgrade finishes. */
+    RETRYABLE = "retryable",
+
+    /** The server was not reachable or didn't respond properly. */
+    NETWORK = "network",
+
+    /** Caused by the user, for example a wrong password or a canceled dialog. */
+    USER = "user",
+
+    /** Repeating the operation won't help. */
+    FATAL = "fatal"
+}
+
 /**
  * The `PowerAuthOtpUtil` provides various set of methods for parsing and validating
  activation or recovery codes.
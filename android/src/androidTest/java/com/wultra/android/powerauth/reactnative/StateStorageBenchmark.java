@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import io.getlime.security.powerauth.sdk.impl.ISavePowerAuthStateListener;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the write latency of one state change, which is what every signature costs,
+ * for {@link MappedFileStateStorage} and for the SDK's default storage, which applications use
+ * unless they set another one.
+ * <p>
+ * The report is written to the log with the {@code PowerAuthBenchmark} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StateStorageBenchmark {
+
+    private static final String TAG = "PowerAuthBenchmark";
+    private static final String INSTANCE_ID = "benchmark";
+    private static final int STATE_SIZE = 2048;
+    private static final int WARMUP = 50;
+    private static final int ITERATIONS = 500;
+
+    private Context context;
+    private File directory;
+
+    @Before
+    public void setUp() {
+        assumeTrue("MappedFileStateStorage requires API 23", Build.VERSION.SDK_INT >= Build.VERSION_CODES.M);
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        directory = new File(context.getNoBackupFilesDir(), "PowerAuthBenchmark");
+        deleteRecursively(directory);
+    }
+
+    @After
+    public void tearDown() {
+        if (directory != null) {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void writeLatencyPerSignature() {
+        long[] mapped = measure(MappedFileStateStorage.withoutFallback(directory));
+        long[] defaults = measure(MappedFileStateStorage.createDefaultStorage(context));
+        Log.i(TAG, format("MappedFileStateStorage", mapped));
+        Log.i(TAG, format("Default SDK storage", defaults));
+        Log.i(TAG, String.format(Locale.US, "Median speedup: %.1fx", (double) percentile(defaults, 0.50) / Math.max(1, percentile(mapped, 0.50))));
+    }
+
+    /**
+     * Writes a state of the typical size repeatedly, changing a few bytes each time like
+     * the signature counter does, and returns the sorted write times in nanoseconds.
+     */
+    @NonNull
+    private static long[] measure(@NonNull ISavePowerAuthStateListener storage) {
+        byte[] state = new byte[STATE_SIZE];
+        new Random(0).nextBytes(state);
+        for (int i = 0; i < WARMUP; i++) {
+            write(storage, state, i);
+        }
+        long[] times = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            times[i] = write(storage, state, WARMUP + i);
+        }
+        assertArrayEquals("Last state is stored", state, storage.serializedState(INSTANCE_ID));
+        Arrays.sort(times);
+        return times;
+    }
+
+    private static long write(@NonNull ISavePowerAuthStateListener storage, @NonNull byte[] state, int counter) {
+        state[0] = (byte) counter;
+        state[1] = (byte) (counter >> 8);
+        long start = System.nanoTime();
+        storage.onPowerAuthStateChanged(INSTANCE_ID, state);
+        return System.nanoTime() - start;
+    }
+
+    @NonNull
+    private static String format(@NonNull String name, @NonNull long[] sorted) {
+        return String.format(Locale.US, "%s: %d writes of %d bytes, p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+                name, sorted.length, STATE_SIZE,
+                percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.90) / 1e6, percentile(sorted, 0.99) / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static long percentile(@NonNull long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static void deleteRecursively(@NonNull File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
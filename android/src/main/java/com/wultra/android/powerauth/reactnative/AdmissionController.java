@@ -0,0 +1,344 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Promise;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of PowerAuth operations that talk to the server at the same time.
+ * <p>
+ * Operations over the limit are queued. Interactive operations are always started before
+ * background ones, and a background operation with the same key as an already queued one
+ * is not queued again, its promise is settled with the result of the queued operation.
+ * <p>
+ * Operations submitted with {@link #submitSingleFlight(String, int, Promise, Operation)} are
+ * merged also with a running operation with the same key. Nothing is cached, once the operation
+ * is finished, the next call with the same key starts a new one.
+ * <p>
+ * An operation admitted right away starts on the submitting thread. An operation that had to
+ * wait starts on the controller's executor, never on the thread that settled the previous one.
+ * PowerAuth SDK callbacks arrive on the main thread, and some operations do expensive work
+ * before they go to the network.
+ */
+class AdmissionController {
+
+    /** Operation started by the user, for example a password validation. */
+    static final int PRIORITY_INTERACTIVE = 0;
+    /** Operation that can wait, for example an activation status refresh. */
+    static final int PRIORITY_BACKGROUND = 1;
+
+    /** Default number of operations allowed to run at the same time. */
+    static final int DEFAULT_MAX_CONCURRENT_OPERATIONS = 2;
+
+    /**
+     * Network operation started by the controller.
+     */
+    interface Operation {
+        /**
+         * Starts the operation. The operation must settle the provided promise exactly once.
+         *
+         * @param promise promise to settle with the result of the operation
+         */
+        void start(@NonNull Promise promise);
+    }
+
+    private final int maxConcurrentOperations;
+    private final Executor executor;
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private final ArrayDeque<Ticket> interactiveQueue = new ArrayDeque<>();
+    private final ArrayDeque<Ticket> backgroundQueue = new ArrayDeque<>();
+    private final Map<String, Ticket> queuedByKey = new HashMap<>();
+    private final Map<String, Ticket> runningByKey = new HashMap<>();
+    private int inFlight;
+
+    private long admittedCount;
+    private long coalescedCount;
+    private long totalWaitMillis;
+    private long maxWaitMillis;
+
+    AdmissionController(int maxConcurrentOperations) {
+        this(maxConcurrentOperations, createExecutor());
+    }
+
+    /**
+     * @param maxConcurrentOperations number of operations allowed to run at the same time
+     * @param executor executor starting the operations that had to wait for a free slot
+     */
+    AdmissionController(int maxConcurrentOperations, @NonNull Executor executor) {
+        if (maxConcurrentOperations < 1) {
+            throw new IllegalArgumentException("At least one concurrent operation must be allowed.");
+        }
+        this.maxConcurrentOperations = maxConcurrentOperations;
+        this.executor = executor;
+    }
+
+    /**
+     * @return single background thread, which stops when it's idle
+     */
+    @NonNull
+    private static Executor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "PowerAuth-admission");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Submits an operation for execution.
+     *
+     * @param coalesceKey if not null, the operation is merged with an already queued operation with the same key
+     * @param priority {@link #PRIORITY_INTERACTIVE} or {@link #PRIORITY_BACKGROUND}
+     * @param promise promise to settle with the result of the operation
+     * @param operation the operation itself
+     */
+    void submit(@Nullable String coalesceKey, int priority, @NonNull Promise promise, @NonNull Operation operation) {
+        submit(coalesceKey, false, priority, promise, operation);
+    }
+
+    /**
+     * Submits an operation that is merged with a queued or running operation with the same key.
+     *
+     * @param key key identifying the operation and its arguments, see {@link #operationKey(String, String...)}
+     * @param priority {@link #PRIORITY_INTERACTIVE} or {@link #PRIORITY_BACKGROUND}
+     * @param promise promise to settle with the result of the operation
+     * @param operation the operation itself
+     */
+    void submitSingleFlight(@NonNull String key, int priority, @NonNull Promise promise, @NonNull Operation operation) {
+        submit(key, true, priority, promise, operation);
+    }
+
+    private void submit(@Nullable String coalesceKey, boolean singleFlight, int priority, @NonNull Promise promise, @NonNull Operation operation) {
+        synchronized (this) {
+            if (singleFlight) {
+                Ticket running = runningByKey.get(coalesceKey);
+                if (running != null && running.add(promise)) {
+                    coalescedCount++;
+                    return;
+                }
+            }
+            if (coalesceKey != null) {
+                Ticket queued = queuedByKey.get(coalesceKey);
+                if (queued != null && queued.add(promise)) {
+                    if (priority == PRIORITY_INTERACTIVE && queued.priority == PRIORITY_BACKGROUND) {
+                        // Somebody is waiting for the result now, move the operation to the interactive queue.
+                        backgroundQueue.remove(queued);
+                        queued.priority = PRIORITY_INTERACTIVE;
+                        interactiveQueue.addLast(queued);
+                    }
+                    coalescedCount++;
+                    return;
+                }
+            }
+            Ticket ticket = new Ticket(coalesceKey, singleFlight, priority, promise, operation);
+            if (priority == PRIORITY_INTERACTIVE) {
+                interactiveQueue.addLast(ticket);
+            } else {
+                backgroundQueue.addLast(ticket);
+            }
+            if (coalesceKey != null) {
+                queuedByKey.put(coalesceKey, ticket);
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Starts queued operations while there's a free slot.
+     */
+    private void drain() {
+        while (true) {
+            Ticket ticket;
+            long waitMillis;
+            synchronized (this) {
+                if (inFlight >= maxConcurrentOperations) {
+                    return;
+                }
+                ticket = interactiveQueue.pollFirst();
+                if (ticket == null) {
+                    ticket = backgroundQueue.pollFirst();
+                }
+                if (ticket == null) {
+                    return;
+                }
+                if (ticket.coalesceKey != null) {
+                    queuedByKey.remove(ticket.coalesceKey);
+                    if (ticket.singleFlight) {
+                        runningByKey.put(ticket.coalesceKey, ticket);
+                    }
+                }
+                inFlight++;
+                waitMillis = SystemClock.elapsedRealtime() - ticket.enqueuedAt;
+                admittedCount++;
+                totalWaitMillis += waitMillis;
+                maxWaitMillis = Math.max(maxWaitMillis, waitMillis);
+            }
+            ticket.onAdmitted(waitMillis);
+            try {
+                ticket.operation.start(ticket);
+            } catch (Exception e) {
+                ErrorTable.reject(ticket, e);
+            }
+        }
+    }
+
+    private void release(@NonNull Ticket ticket) {
+        synchronized (this) {
+            inFlight--;
+            if (ticket.singleFlight && runningByKey.get(ticket.coalesceKey) == ticket) {
+                runningByKey.remove(ticket.coalesceKey);
+            }
+        }
+        // The ticket may have been settled on the main thread, start the next operation elsewhere.
+        executor.execute(drainTask);
+    }
+
+    /**
+     * Creates a key for {@link #submitSingleFlight(String, int, Promise, Operation)}. The arguments
+     * are hashed, so secrets like passwords are not kept in the key.
+     *
+     * @param operation name of the operation
+     * @param arguments arguments of the operation
+     * @return key identifying the operation and its arguments
+     */
+    @NonNull
+    static String operationKey(@NonNull String operation, @Nullable String... arguments) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String argument : arguments) {
+                if (argument == null) {
+                    digest.update((byte) 0);
+                } else {
+                    digest.update((byte) 1);
+                    byte[] bytes = argument.getBytes(StandardCharsets.UTF_8);
+                    digest.update(new byte[] { (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16), (byte) (bytes.length >>> 8), (byte) bytes.length });
+                    digest.update(bytes);
+                }
+            }
+            StringBuilder sb = new StringBuilder(operation).append(':');
+            for (byte b : digest.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is always available on Android.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return number of operations currently talking to the server
+     */
+    synchronized int getInFlightCount() {
+        return inFlight;
+    }
+
+    /**
+     * @return number of operations waiting for a free slot
+     */
+    synchronized int getQueuedCount() {
+        return interactiveQueue.size() + backgroundQueue.size();
+    }
+
+    /**
+     * @return maximum number of operations running at the same time
+     */
+    int getMaxConcurrentOperations() {
+        return maxConcurrentOperations;
+    }
+
+    /**
+     * @return number of operations that were started so far
+     */
+    synchronized long getAdmittedCount() {
+        return admittedCount;
+    }
+
+    /**
+     * @return number of requests that were merged into an already queued or running operation
+     */
+    synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * @return average time in milliseconds the started operations spent in the queue
+     */
+    synchronized long getAverageWaitMillis() {
+        return admittedCount == 0 ? 0 : totalWaitMillis / admittedCount;
+    }
+
+    /**
+     * @return the longest time in milliseconds an operation spent in the queue
+     */
+    synchronized long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * Queued operation with all promises waiting for its result.
+     */
+    private class Ticket extends CompletionPromise.Group {
+
+        final String coalesceKey;
+        final boolean singleFlight;
+        final Operation operation;
+        final long enqueuedAt;
+        int priority;
+
+        Ticket(@Nullable String coalesceKey, boolean singleFlight, int priority, @NonNull Promise promise, @NonNull Operation operation) {
+            super(promise);
+            this.coalesceKey = coalesceKey;
+            this.singleFlight = singleFlight;
+            this.priority = priority;
+            this.operation = operation;
+            this.enqueuedAt = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        protected void onSettled() {
+            release(this);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Promise;
+
+import java.nio.charset.StandardCharsets;
+
+import io.getlime.security.powerauth.sdk.PowerAuthAuthentication;
+
+/**
+ * Decides how the module's network operations go through {@link AdmissionController}: their
+ * priority and which calls are merged together.
+ * <p>
+ * The module and the load test submit their operations here, so the load test exercises
+ * the same coalescing keys and priorities as the application.
+ */
+final class AdmissionPolicy {
+
+    private AdmissionPolicy() {
+    }
+
+    /**
+     * Submits a status refresh. Refreshes are merged with a queued one, they all get the same
+     * status.
+     */
+    static void fetchActivationStatus(@NonNull AdmissionController admission, @NonNull Promise promise, @NonNull AdmissionController.Operation operation) {
+        admission.submit("fetchActivationStatus", AdmissionController.PRIORITY_BACKGROUND, promise, operation);
+    }
+
+    /**
+     * Submits a password validation. Validations of the same password share one request.
+     */
+    static void validatePassword(@NonNull AdmissionController admission, @NonNull String password, @NonNull Promise promise, @NonNull AdmissionController.Operation operation) {
+        admission.submitSingleFlight(AdmissionController.operationKey("validatePassword", password), AdmissionController.PRIORITY_INTERACTIVE, promise, operation);
+    }
+
+    /**
+     * Submits a password change. Changes with the same arguments share one request.
+     */
+    static void changePassword(@NonNull AdmissionController admission, @NonNull String oldPassword, @NonNull String newPassword, @NonNull Promise promise, @NonNull AdmissionController.Operation operation) {
+        admission.submitSingleFlight(AdmissionController.operationKey("changePassword", oldPassword, newPassword), AdmissionController.PRIORITY_INTERACTIVE, promise, operation);
+    }
+
+    /**
+     * Submits a request for the recovery data. Requests with the same authentication share one
+     * vault unlock.
+     */
+    static void activationRecoveryData(@NonNull AdmissionController admission, @NonNull PowerAuthAuthentication auth, @NonNull Promise promise, @NonNull AdmissionController.Operation operation) {
+        admission.submitSingleFlight(getAuthenticationKey("activationRecoveryData", auth), AdmissionController.PRIORITY_INTERACTIVE, promise, operation);
+    }
+
+    /**
+     * Submits an interactive operation that is never merged with another one, because it
+     * changes the activation or its result depends on more than the arguments.
+     */
+    static void interactive(@NonNull AdmissionController admission, @NonNull Promise promise, @NonNull AdmissionController.Operation operation) {
+        admission.submit(null, AdmissionController.PRIORITY_INTERACTIVE, promise, operation);
+    }
+
+    @NonNull
+    static String getAuthenticationKey(@NonNull String operation, @NonNull PowerAuthAuthentication auth) {
+        // ISO-8859-1 maps every byte to one character, so different keys stay different.
+        String biometry = auth.useBiometry == null ? null : new String(auth.useBiometry, StandardCharsets.ISO_8859_1);
+        return AdmissionController.operationKey(operation, String.valueOf(auth.usePossession), auth.usePassword, biometry);
+    }
+}
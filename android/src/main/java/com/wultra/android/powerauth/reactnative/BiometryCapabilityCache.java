@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import io.getlime.security.powerauth.biometry.BiometricAuthentication;
+import io.getlime.security.powerauth.sdk.PowerAuthSDK;
+
+/**
+ * Keeps results of biometry related probes in memory, so repeated checks don't have to
+ * touch the keystore or the persistent storage.
+ * <p>
+ * The cache has to be invalidated whenever the biometry factor may change, for example after
+ * the factor is added or removed, after the activation is removed, or when the application
+ * returns to the foreground (the user might have changed enrolled biometry in the system settings).
+ */
+class BiometryCapabilityCache {
+
+    private final Context context;
+
+    private Boolean biometryAvailable;
+    private Boolean hasBiometryFactor;
+    private int generation;
+
+    BiometryCapabilityCache(@NonNull Context context) {
+        this.context = context;
+    }
+
+    /**
+     * @return true if the device can use biometric authentication
+     */
+    boolean isBiometryAvailable() {
+        int gen;
+        synchronized (this) {
+            if (biometryAvailable != null) {
+                return biometryAvailable;
+            }
+            gen = generation;
+        }
+        boolean available = BiometricAuthentication.isBiometricAuthenticationAvailable(context);
+        synchronized (this) {
+            if (gen == generation) {
+                biometryAvailable = available;
+            }
+        }
+        return available;
+    }
+
+    /**
+     * @param powerAuth instance to query when the value is not cached
+     * @return true if the biometry factor key is present
+     */
+    boolean hasBiometryFactor(@NonNull PowerAuthSDK powerAuth) {
+        int gen;
+        synchronized (this) {
+            if (hasBiometryFactor != null) {
+                return hasBiometryFactor;
+            }
+            gen = generation;
+        }
+        boolean hasFactor = powerAuth.hasBiometryFactor(context);
+        synchronized (this) {
+            if (gen == generation) {
+                hasBiometryFactor = hasFactor;
+            }
+        }
+        return hasFactor;
+    }
+
+    /**
+     * Forgets all cached values. Values that are being computed during the invalidation are not stored.
+     */
+    synchronized void invalidate() {
+        generation++;
+        biometryAvailable = null;
+        hasBiometryFactor = null;
+    }
+}
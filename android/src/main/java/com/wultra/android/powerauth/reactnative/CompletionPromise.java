@@ -0,0 +1,250 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Promise that funnels all {@code reject} overloads into a single callback, so the module
+ * can observe when an operation settles without caring about which overload was used.
+ */
+abstract class CompletionPromise implements Promise {
+
+    /**
+     * Called when the operation resolves.
+     *
+     * @param value resolved value
+     */
+    protected abstract void onResolve(@Nullable Object value);
+
+    /**
+     * Called when the operation is rejected.
+     *
+     * @param code error code
+     * @param message error message
+     * @param throwable error cause
+     * @param userInfo additional error data
+     */
+    protected abstract void onReject(@Nullable String code, @Nullable String message, @Nullable Throwable throwable, @Nullable WritableMap userInfo);
+
+    /**
+     * Called when the operation leaves the {@link AdmissionController} queue.
+     *
+     * @param waitMillis time in milliseconds the operation spent in the queue
+     */
+    void onAdmitted(long waitMillis) {
+    }
+
+    /**
+     * Called when the operation is merged into a queued or running operation with the same key,
+     * before the result is available.
+     */
+    void onCoalesced() {
+    }
+
+    @Override
+    public void resolve(@Nullable Object value) {
+        onResolve(value);
+    }
+
+    @Override
+    public void reject(String code, String message) {
+        onReject(code, message, null, null);
+    }
+
+    @Override
+    public void reject(String code, Throwable throwable) {
+        onReject(code, null, throwable, null);
+    }
+
+    @Override
+    public void reject(String code, String message, Throwable throwable) {
+        onReject(code, message, throwable, null);
+    }
+
+    @Override
+    public void reject(Throwable throwable) {
+        onReject(null, null, throwable, null);
+    }
+
+    @Override
+    public void reject(Throwable throwable, WritableMap userInfo) {
+        onReject(null, null, throwable, userInfo);
+    }
+
+    @Override
+    public void reject(String code, @NonNull WritableMap userInfo) {
+        onReject(code, null, null, userInfo);
+    }
+
+    @Override
+    public void reject(String code, Throwable throwable, WritableMap userInfo) {
+        onReject(code, null, throwable, userInfo);
+    }
+
+    @Override
+    public void reject(String code, String message, @NonNull WritableMap userInfo) {
+        onReject(code, message, null, userInfo);
+    }
+
+    @Override
+    public void reject(String code, String message, Throwable throwable, WritableMap userInfo) {
+        onReject(code, message, throwable, userInfo);
+    }
+
+    @Override
+    @Deprecated
+    public void reject(String message) {
+        onReject(null, message, null, null);
+    }
+
+    /**
+     * Promise that forwards the first result to a group of promises.
+     * <p>
+     * Native maps and arrays can be passed to the bridge only once, so every additional
+     * receiver gets its own copy of the resolved value or the error user info.
+     */
+    static class Group extends CompletionPromise {
+
+        private final List<Promise> promises = new ArrayList<>();
+        private boolean settled;
+        private long admittedWaitMillis = -1;
+
+        Group(@NonNull Promise promise) {
+            promises.add(promise);
+        }
+
+        /**
+         * Adds another promise to the group. The promise is told that it was coalesced and,
+         * if the group was already admitted, how long the group waited in the queue.
+         *
+         * @param promise promise to be settled together with the others
+         * @return false when the group is already settled and the promise was not added
+         */
+        synchronized boolean add(@NonNull Promise promise) {
+            if (settled) {
+                return false;
+            }
+            if (promise instanceof CompletionPromise) {
+                CompletionPromise member = (CompletionPromise) promise;
+                member.onCoalesced();
+                if (admittedWaitMillis >= 0) {
+                    member.onAdmitted(admittedWaitMillis);
+                }
+            }
+            promises.add(promise);
+            return true;
+        }
+
+        /**
+         * @return number of promises in the group
+         */
+        synchronized int size() {
+            return promises.size();
+        }
+
+        @Override
+        void onAdmitted(long waitMillis) {
+            List<Promise> targets;
+            synchronized (this) {
+                admittedWaitMillis = waitMillis;
+                targets = new ArrayList<>(promises);
+            }
+            for (Promise promise : targets) {
+                if (promise instanceof CompletionPromise) {
+                    ((CompletionPromise) promise).onAdmitted(waitMillis);
+                }
+            }
+        }
+
+        /**
+         * Called once, after all promises in the group were settled.
+         */
+        protected void onSettled() {
+        }
+
+        @Nullable
+        private synchronized List<Promise> settle() {
+            if (settled) {
+                return null;
+            }
+            settled = true;
+            return new ArrayList<>(promises);
+        }
+
+        @Override
+        protected void onResolve(@Nullable Object value) {
+            List<Promise> targets = settle();
+            if (targets == null) {
+                return;
+            }
+            Object snapshot = targets.size() > 1 ? snapshot(value) : null;
+            for (int i = 0; i < targets.size(); i++) {
+                targets.get(i).resolve(i == 0 ? value : restore(snapshot));
+            }
+            onSettled();
+        }
+
+        @Override
+        protected void onReject(@Nullable String code, @Nullable String message, @Nullable Throwable throwable, @Nullable WritableMap userInfo) {
+            List<Promise> targets = settle();
+            if (targets == null) {
+                return;
+            }
+            Object snapshot = targets.size() > 1 ? snapshot(userInfo) : null;
+            for (int i = 0; i < targets.size(); i++) {
+                WritableMap info = i == 0 ? userInfo : (WritableMap) restore(snapshot);
+                targets.get(i).reject(code, message, throwable, info);
+            }
+            onSettled();
+        }
+
+        @Nullable
+        private static Object snapshot(@Nullable Object value) {
+            if (value instanceof ReadableMap) {
+                return ((ReadableMap) value).toHashMap();
+            }
+            if (value instanceof ReadableArray) {
+                return ((ReadableArray) value).toArrayList();
+            }
+            return value;
+        }
+
+        @Nullable
+        @SuppressWarnings("unchecked")
+        private static Object restore(@Nullable Object snapshot) {
+            if (snapshot instanceof HashMap) {
+                return Arguments.makeNativeMap((HashMap<String, Object>) snapshot);
+            }
+            if (snapshot instanceof ArrayList) {
+                return Arguments.makeNativeArray((ArrayList<Object>) snapshot);
+            }
+            return snapshot;
+        }
+    }
+}
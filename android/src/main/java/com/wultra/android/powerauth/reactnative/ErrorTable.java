@@ -0,0 +1,245 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.getlime.security.powerauth.exception.PowerAuthErrorCodes;
+import io.getlime.security.powerauth.exception.PowerAuthErrorException;
+import io.getlime.security.powerauth.networking.exceptions.FailedApiException;
+
+/**
+ * Table of errors reported by the module to Javascript.
+ * <p>
+ * Every rejection carries a user info map with the error category and a suggested backoff,
+ * so the application can decide whether to retry without parsing messages:
+ * <ul>
+ *     <li>{@code category} - one of {@code retryable}, {@code network}, {@code user} or {@code fatal}</li>
+ *     <li>{@code retryable} - true when repeating the same call may succeed</li>
+ *     <li>{@code backoffMs} - suggested delay before the retry, in milliseconds</li>
+ *     <li>{@code sdkErrorCode} - numeric PowerAuth SDK error code, if available</li>
+ *     <li>{@code httpStatus} - HTTP status returned by the server, if available</li>
+ * </ul>
+ */
+final class ErrorTable {
+
+    /** The operation may succeed when repeated, for example after the protocol upgrade finishes. */
+    static final String CATEGORY_RETRYABLE = "retryable";
+    /** The server was not reachable or didn't respond properly. */
+    static final String CATEGORY_NETWORK = "network";
+    /** Caused by the user, for example a wrong password or a canceled dialog. */
+    static final String CATEGORY_USER = "user";
+    /** Repeating the operation won't help. */
+    static final String CATEGORY_FATAL = "fatal";
+
+    /** Code used when the error doesn't originate from the PowerAuth SDK. */
+    static final String REACT_NATIVE_ERROR = "PA2ReactNativeError";
+
+    /**
+     * Error description.
+     */
+    static final class Entry {
+
+        final String code;
+        final String category;
+        final int backoffMillis;
+
+        Entry(@NonNull String code, @NonNull String category, int backoffMillis) {
+            this.code = code;
+            this.category = category;
+            this.backoffMillis = backoffMillis;
+        }
+
+        boolean isRetryable() {
+            return CATEGORY_RETRYABLE.equals(category) || CATEGORY_NETWORK.equals(category);
+        }
+    }
+
+    private static final Map<Integer, Entry> SDK_ERRORS;
+    private static final Map<String, Entry> MODULE_ERRORS;
+
+    // Failures outside of the SDK error codes, reported as the generic module error.
+    private static final Entry HTTP_UNAUTHORIZED = new Entry(REACT_NATIVE_ERROR, CATEGORY_USER, 0);
+    private static final Entry HTTP_TOO_MANY_REQUESTS = new Entry(REACT_NATIVE_ERROR, CATEGORY_RETRYABLE, 5000);
+    private static final Entry HTTP_SERVER_ERROR = new Entry(REACT_NATIVE_ERROR, CATEGORY_NETWORK, 2000);
+    private static final Entry HTTP_FAILED = new Entry(REACT_NATIVE_ERROR, CATEGORY_FATAL, 0);
+    private static final Entry IO_ERROR = new Entry(REACT_NATIVE_ERROR, CATEGORY_NETWORK, 2000);
+
+    static {
+        Map<Integer, Entry> sdk = new HashMap<>();
+        sdk.put(PowerAuthErrorCodes.PA2Succeed, new Entry("PA2Succeed", CATEGORY_FATAL, 0));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeNetworkError, new Entry("PA2ErrorCodeNetworkError", CATEGORY_NETWORK, 2000));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeSignatureError, new Entry("PA2ErrorCodeSignatureError", CATEGORY_FATAL, 0));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeInvalidActivationState, new Entry("PA2ErrorCodeInvalidActivationState", CATEGORY_FATAL, 0));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeInvalidActivationData, new Entry("PA2ErrorCodeInvalidActivationData", CATEGORY_FATAL, 0));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeMissingActivation, new Entry("PA2ErrorCodeMissingActivation", CATEGORY_FATAL, 0));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeActivationPending, new Entry("PA2ErrorCodeActivationPending", CATEGORY_RETRYABLE, 5000));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeBiometryCancel, new Entry("PA2ErrorCodeBiometryCancel", CATEGORY_USER, 0));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeOperationCancelled, new Entry("PA2ErrorCodeOperationCancelled", CATEGORY_USER, 0));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeInvalidActivationCode, new Entry("PA2ErrorCodeInvalidActivationCode", CATEGORY_USER, 0));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeInvalidToken, new Entry("PA2ErrorCodeInvalidToken", CATEGORY_RETRYABLE, 0));
+        // different string to be consistent with iOS where this case is named differently
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeEncryptionError, new Entry("PA2ErrorCodeEncryption", CATEGORY_FATAL, 0));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeWrongParameter, new Entry("PA2ErrorCodeWrongParameter", CATEGORY_FATAL, 0));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeProtocolUpgrade, new Entry("PA2ErrorCodeProtocolUpgrade", CATEGORY_FATAL, 0));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodePendingProtocolUpgrade, new Entry("PA2ErrorCodePendingProtocolUpgrade", CATEGORY_RETRYABLE, 1000));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeBiometryNotSupported, new Entry("PA2ErrorCodeBiometryNotSupported", CATEGORY_FATAL, 0));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeBiometryNotAvailable, new Entry("PA2ErrorCodeBiometryNotAvailable", CATEGORY_USER, 0));
+        sdk.put(PowerAuthErrorCodes.PA2ErrorCodeBiometryNotRecognized, new Entry("PA2ErrorCodeBiometryNotRecognized", CATEGORY_USER, 0));
+        SDK_ERRORS = Collections.unmodifiableMap(sdk);
+
+        Map<String, Entry> module = new HashMap<>();
+        putModuleError(module, REACT_NATIVE_ERROR, CATEGORY_FATAL);
+        putModuleError(module, "PA2ReactNativeErrorPasswordNotSet", CATEGORY_USER);
+        putModuleError(module, "PA2ReactNativeError_BiometryCanceled", CATEGORY_USER);
+        putModuleError(module, "PA2ReactNativeError_BiometryFailed", CATEGORY_USER);
+        putModuleError(module, "PA2RNInvalidActivationObject", CATEGORY_USER);
+        putModuleError(module, "PA2RNInvalidActivationCode", CATEGORY_USER);
+        putModuleError(module, "PA2RNInvalidRecoveryCode", CATEGORY_USER);
+        putModuleError(module, "PA2RNInvalidCharacter", CATEGORY_USER);
+        MODULE_ERRORS = Collections.unmodifiableMap(module);
+    }
+
+    private static void putModuleError(Map<String, Entry> map, String code, String category) {
+        map.put(code, new Entry(code, category, 0));
+    }
+
+    private ErrorTable() {
+    }
+
+    /**
+     * @param error error code from {@link PowerAuthErrorCodes}
+     * @return description of the SDK error
+     */
+    @NonNull
+    static Entry forSdkError(int error) {
+        Entry entry = SDK_ERRORS.get(error);
+        return entry != null ? entry : new Entry("PA2UnknownCode" + error, CATEGORY_FATAL, 0);
+    }
+
+    /**
+     * @param code error code produced by the module itself
+     * @return description of the module error
+     */
+    @NonNull
+    static Entry forCode(@NonNull String code) {
+        Entry entry = MODULE_ERRORS.get(code);
+        return entry != null ? entry : new Entry(code, CATEGORY_FATAL, 0);
+    }
+
+    /**
+     * @param t failure reported by the SDK or the module
+     * @return description of the failure
+     */
+    @NonNull
+    static Entry forThrowable(@Nullable Throwable t) {
+        if (t instanceof PowerAuthErrorException) {
+            return forSdkError(((PowerAuthErrorException) t).getPowerAuthErrorCode());
+        }
+        if (t instanceof FailedApiException) {
+            int status = ((FailedApiException) t).getResponseCode();
+            if (status == 401 || status == 403) {
+                // Typically a wrong password.
+                return HTTP_UNAUTHORIZED;
+            }
+            if (status == 429) {
+                return HTTP_TOO_MANY_REQUESTS;
+            }
+            if (status == 408 || status >= 500) {
+                return HTTP_SERVER_ERROR;
+            }
+            return HTTP_FAILED;
+        }
+        if (t instanceof IOException) {
+            return IO_ERROR;
+        }
+        return MODULE_ERRORS.get(REACT_NATIVE_ERROR);
+    }
+
+    /**
+     * Rejects the promise with a failure reported by the SDK.
+     *
+     * @param promise promise to reject
+     * @param t failure
+     */
+    static void reject(@NonNull Promise promise, @NonNull Throwable t) {
+        Entry entry = forThrowable(t);
+        WritableMap userInfo = createUserInfo(entry);
+        if (t instanceof PowerAuthErrorException) {
+            userInfo.putInt("sdkErrorCode", ((PowerAuthErrorException) t).getPowerAuthErrorCode());
+        } else if (t instanceof FailedApiException) {
+            userInfo.putInt("httpStatus", ((FailedApiException) t).getResponseCode());
+        }
+        promise.reject(entry.code, t.getMessage(), t, userInfo);
+    }
+
+    /**
+     * Rejects the promise with an error code from {@link PowerAuthErrorCodes}.
+     *
+     * @param promise promise to reject
+     * @param error SDK error code
+     * @param message error message
+     */
+    static void reject(@NonNull Promise promise, int error, @NonNull String message) {
+        Entry entry = forSdkError(error);
+        WritableMap userInfo = createUserInfo(entry);
+        userInfo.putInt("sdkErrorCode", error);
+        promise.reject(entry.code, message, userInfo);
+    }
+
+    /**
+     * Rejects the promise with an error produced by the module itself.
+     *
+     * @param promise promise to reject
+     * @param code error code
+     * @param message error message
+     */
+    static void reject(@NonNull Promise promise, @NonNull String code, @NonNull String message) {
+        reject(promise, code, message, null);
+    }
+
+    /**
+     * Rejects the promise with an error produced by the module itself.
+     *
+     * @param promise promise to reject
+     * @param code error code
+     * @param message error message
+     * @param t cause of the error
+     */
+    static void reject(@NonNull Promise promise, @NonNull String code, @NonNull String message, @Nullable Throwable t) {
+        promise.reject(code, message, t, createUserInfo(forCode(code)));
+    }
+
+    @NonNull
+    private static WritableMap createUserInfo(@NonNull Entry entry) {
+        WritableMap userInfo = Arguments.createMap();
+        userInfo.putString("category", entry.category);
+        userInfo.putBoolean("retryable", entry.isRetryable());
+        userInfo.putInt("backoffMs", entry.backoffMillis);
+        return userInfo;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * Job that keeps the activation ready while the application is in the background.
+ * <p>
+ * The job runs when the network is available. It fetches the activation status, which also
+ * finishes a pending protocol upgrade in the PowerAuth SDK. Interactive calls made after
+ * the application returns to the foreground then don't have to wait for the upgrade.
+ * <p>
+ * The job is scheduled when the application goes to the background, at most once per
+ * {@link #MIN_INTERVAL_MILLIS}. It works with the PowerAuth instance owned by the package, so it
+ * doesn't need the React context. It does nothing when the process was restarted since
+ * the job was scheduled, or when there's no valid activation.
+ */
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+public class MaintenanceJobService extends JobService {
+
+    /** Identifier of the job, unique within the application. */
+    public static final int JOB_ID = 0x5041524e;
+
+    /** Minimum time between two maintenance runs. */
+    static final long MIN_INTERVAL_MILLIS = 15 * 60 * 1000;
+
+    private static final String LOG_TAG = "PA-RN";
+
+    private static long sLastRunAt = -MIN_INTERVAL_MILLIS;
+    private static SharedPowerAuth sShared;
+
+    /**
+     * Schedules the maintenance job, unless it ran recently.
+     *
+     * @param context Android context
+     * @param shared PowerAuth instance the job works with
+     */
+    static void schedule(@NonNull Context context, @NonNull SharedPowerAuth shared) {
+        synchronized (MaintenanceJobService.class) {
+            if (SystemClock.elapsedRealtime() - sLastRunAt < MIN_INTERVAL_MILLIS) {
+                return;
+            }
+            sShared = shared;
+        }
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, MaintenanceJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .build();
+        if (scheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.w(LOG_TAG, "PowerAuth maintenance job was not scheduled.");
+        }
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        SharedPowerAuth shared;
+        synchronized (MaintenanceJobService.class) {
+            shared = sShared;
+            if (shared == null) {
+                return false;
+            }
+            sLastRunAt = SystemClock.elapsedRealtime();
+        }
+        shared.runMaintenance(new CompletionPromise() {
+            @Override
+            protected void onResolve(@Nullable Object value) {
+                jobFinished(params, false);
+            }
+
+            @Override
+            protected void onReject(@Nullable String code, @Nullable String message, @Nullable Throwable throwable, @Nullable WritableMap userInfo) {
+                // The job is scheduled again when the application goes to the background next time.
+                Log.w(LOG_TAG, "PowerAuth maintenance failed: " + code);
+                jobFinished(params, false);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The status request is already shared with other callers, let it finish.
+        return false;
+    }
+}
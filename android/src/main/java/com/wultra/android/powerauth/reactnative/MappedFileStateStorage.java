@@ -0,0 +1,486 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import android.content.Context;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import io.getlime.security.powerauth.keychain.PA2Keychain;
+import io.getlime.security.powerauth.sdk.PowerAuthKeychainConfiguration;
+import io.getlime.security.powerauth.sdk.impl.DefaultSavePowerAuthStateListener;
+import io.getlime.security.powerauth.sdk.impl.ISavePowerAuthStateListener;
+
+/**
+ * Storage for the serialized PowerAuth state, backed by an append-only, memory-mapped journal file.
+ * <p>
+ * Each state change appends one AES-GCM encrypted record to the journal, so a signature doesn't
+ * rewrite the whole storage like the default SharedPreferences based implementation does.
+ * The last record that decrypts correctly is the current state. When the journal is full,
+ * it's compacted into a new file containing just the latest record.
+ * <p>
+ * Records are encrypted with a random data key, which is stored next to the journal wrapped
+ * with a key from the Android KeyStore. The KeyStore is therefore used only once, when
+ * the journal is opened.
+ * <p>
+ * When there's no journal yet, the state is imported from the fallback storage, so an
+ * application that already has an activation in the SDK's default storage keeps it. The
+ * imported state is left in the default storage, which is updated only while the journal
+ * cannot be written.
+ * <p>
+ * If the journal cannot be read, the storage throws {@link IllegalStateException} instead of
+ * reporting that there's no activation. If a state cannot be written, it's written to
+ * the fallback storage, and the fallback is used until the journal works again. By default,
+ * the fallback is the SDK's default storage. The SDK calls the storage from its own callbacks,
+ * where an exception would crash the application, so a storage without a fallback, which
+ * throws {@link IllegalStateException} when a write fails, must be created explicitly with
+ * {@link #withoutFallback(File)}.
+ * <p>
+ * Use {@link PowerAuthRNPackage#setStateStorage(ISavePowerAuthStateListener)} or
+ * {@code PowerAuthSDK.Builder.stateListener()} to use this storage.
+ */
+@RequiresApi(api = Build.VERSION_CODES.M)
+public class MappedFileStateStorage implements ISavePowerAuthStateListener {
+
+    private static final String LOG_TAG = "PA-RN";
+    private static final String KEYSTORE_PROVIDER = "AndroidKeyStore";
+    private static final String KEYSTORE_ALIAS = "com.wultra.android.powerauth.reactnative.MappedFileStateStorage";
+    private static final String CIPHER = "AES/GCM/NoPadding";
+    private static final int DATA_KEY_SIZE = 32;
+    private static final int IV_SIZE = 12;
+    private static final int TAG_BITS = 128;
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final File directory;
+    private final ISavePowerAuthStateListener fallback;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Journal> journals = new HashMap<>();
+
+    /**
+     * Creates storage keeping its files in the application's no-backup directory, with the SDK's
+     * default storage as the fallback.
+     *
+     * @param context Android context
+     */
+    public MappedFileStateStorage(@NonNull Context context) {
+        this(context, createDefaultStorage(context));
+    }
+
+    /**
+     * Creates storage keeping its files in the application's no-backup directory.
+     *
+     * @param context Android context
+     * @param fallback storage used when the journal cannot be written
+     */
+    public MappedFileStateStorage(@NonNull Context context, @NonNull ISavePowerAuthStateListener fallback) {
+        this(new File(context.getNoBackupFilesDir(), "powerauth-rn"), fallback);
+    }
+
+    /**
+     * Creates storage keeping its files in the given directory.
+     *
+     * @param directory directory for the journal files
+     * @param fallback storage used when the journal cannot be written
+     */
+    public MappedFileStateStorage(@NonNull File directory, @NonNull ISavePowerAuthStateListener fallback) {
+        this.directory = directory;
+        this.fallback = fallback;
+    }
+
+    private MappedFileStateStorage(@NonNull File directory) {
+        this.directory = directory;
+        this.fallback = null;
+    }
+
+    /**
+     * Creates storage without a fallback. When a state cannot be written, the storage throws
+     * {@link IllegalStateException} from the SDK's callback, which usually crashes the application.
+     * Use it only when losing a state change is worse than that.
+     *
+     * @param directory directory for the journal files
+     * @return storage without a fallback
+     */
+    @NonNull
+    public static MappedFileStateStorage withoutFallback(@NonNull File directory) {
+        return new MappedFileStateStorage(directory);
+    }
+
+    /**
+     * Creates the storage the SDK uses when no state listener is set, with the default keychain
+     * configuration. If you configure the SDK with a custom keychain configuration, pass your
+     * own instance of {@link DefaultSavePowerAuthStateListener} as the fallback instead.
+     *
+     * @param context Android context
+     * @return the SDK's default state storage
+     */
+    @NonNull
+    static ISavePowerAuthStateListener createDefaultStorage(@NonNull Context context) {
+        PA2Keychain keychain = new PA2Keychain(new PowerAuthKeychainConfiguration().getKeychainStatusId());
+        return new DefaultSavePowerAuthStateListener(context.getApplicationContext(), keychain);
+    }
+
+    @Nullable
+    @Override
+    public synchronized byte[] serializedState(@NonNull String instanceId) {
+        File marker = getFallbackMarker(instanceId);
+        if (fallback != null && marker.exists()) {
+            // The latest state was written to the fallback, try to move it back to the journal.
+            byte[] state = fallback.serializedState(instanceId);
+            if (state != null) {
+                try {
+                    getJournal(instanceId).append(state);
+                    if (!marker.delete()) {
+                        Log.w(LOG_TAG, "Unable to delete " + marker);
+                    }
+                } catch (IOException | GeneralSecurityException e) {
+                    journals.remove(instanceId);
+                    Log.w(LOG_TAG, "PowerAuth state stays in the fallback storage.", e);
+                }
+            }
+            return state;
+        }
+        if (fallback != null && !journals.containsKey(instanceId) && !getJournalFile(instanceId).exists()) {
+            // First use, the activation may still be in the storage used so far.
+            byte[] state = fallback.serializedState(instanceId);
+            if (state != null) {
+                try {
+                    getJournal(instanceId).append(state);
+                } catch (IOException | GeneralSecurityException e) {
+                    journals.remove(instanceId);
+                    // Without the journal file, the import is tried again next time.
+                    if (getJournalFile(instanceId).exists() && !getJournalFile(instanceId).delete()) {
+                        throw new IllegalStateException("Failed to import PowerAuth state.", e);
+                    }
+                    Log.w(LOG_TAG, "PowerAuth state stays in the fallback storage.", e);
+                }
+                return state;
+            }
+        }
+        try {
+            byte[] state = getJournal(instanceId).state;
+            return state == null ? null : state.clone();
+        } catch (IOException | GeneralSecurityException e) {
+            journals.remove(instanceId);
+            // Returning null would look like there's no activation.
+            throw new IllegalStateException("Failed to load PowerAuth state.", e);
+        }
+    }
+
+    @Override
+    public synchronized void onPowerAuthStateChanged(@NonNull String instanceId, @NonNull byte[] serializedState) {
+        File marker = getFallbackMarker(instanceId);
+        try {
+            getJournal(instanceId).append(serializedState);
+            if (fallback == null || !marker.exists() || marker.delete()) {
+                return;
+            }
+            Log.w(LOG_TAG, "Unable to delete " + marker);
+        } catch (IOException | GeneralSecurityException e) {
+            journals.remove(instanceId);
+            if (fallback == null) {
+                throw new IllegalStateException("Failed to save PowerAuth state.", e);
+            }
+            Log.w(LOG_TAG, "Failed to save PowerAuth state, using the fallback storage.", e);
+        }
+        // The marker stays, so keep the fallback up to date.
+        fallback.onPowerAuthStateChanged(instanceId, serializedState);
+        try {
+            if (!marker.exists() && !marker.createNewFile()) {
+                throw new IOException("Unable to create " + marker);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to save PowerAuth state.", e);
+        }
+    }
+
+    /**
+     * Rewrites all open journals so they contain just the current state, and wipes the older
+     * records. The module calls this when an activation is removed. Call it also when you
+     * remove an activation directly through {@code PowerAuthSDK}.
+     */
+    public synchronized void compact() {
+        for (Map.Entry<String, Journal> entry : journals.entrySet()) {
+            try {
+                entry.getValue().rewrite();
+            } catch (IOException | GeneralSecurityException e) {
+                Log.e(LOG_TAG, "Failed to compact PowerAuth state for " + entry.getKey(), e);
+            }
+        }
+    }
+
+    @NonNull
+    private Journal getJournal(@NonNull String instanceId) throws IOException, GeneralSecurityException {
+        Journal journal = journals.get(instanceId);
+        if (journal == null) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create directory " + directory);
+            }
+            journal = new Journal(getJournalFile(instanceId), loadDataKey(new File(directory, getFileName(instanceId) + ".key")));
+            journals.put(instanceId, journal);
+        }
+        return journal;
+    }
+
+    @NonNull
+    private File getJournalFile(@NonNull String instanceId) {
+        return new File(directory, getFileName(instanceId) + ".journal");
+    }
+
+    /**
+     * @return file that exists while the fallback storage contains a newer state than the journal
+     */
+    @NonNull
+    private File getFallbackMarker(@NonNull String instanceId) {
+        return new File(directory, getFileName(instanceId) + ".fallback");
+    }
+
+    @NonNull
+    private static String getFileName(@NonNull String instanceId) {
+        return instanceId.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /**
+     * Loads the data key for the journal, or creates a new one.
+     *
+     * @param file file with the wrapped data key
+     * @return data key
+     */
+    @NonNull
+    private SecretKey loadDataKey(@NonNull File file) throws IOException, GeneralSecurityException {
+        SecretKey wrappingKey = getWrappingKey();
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        if (file.isFile()) {
+            byte[] wrapped = readFile(file);
+            cipher.init(Cipher.DECRYPT_MODE, wrappingKey, new GCMParameterSpec(TAG_BITS, wrapped, 0, IV_SIZE));
+            return new SecretKeySpec(cipher.doFinal(wrapped, IV_SIZE, wrapped.length - IV_SIZE), "AES");
+        }
+        byte[] keyBytes = new byte[DATA_KEY_SIZE];
+        random.nextBytes(keyBytes);
+        cipher.init(Cipher.ENCRYPT_MODE, wrappingKey);
+        byte[] iv = cipher.getIV();
+        byte[] encrypted = cipher.doFinal(keyBytes);
+        ByteBuffer wrapped = ByteBuffer.allocate(iv.length + encrypted.length);
+        wrapped.put(iv).put(encrypted);
+        writeFile(file, wrapped.array());
+        return new SecretKeySpec(keyBytes, "AES");
+    }
+
+    @NonNull
+    private static SecretKey getWrappingKey() throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE_PROVIDER);
+        keyStore.load(null);
+        if (keyStore.containsAlias(KEYSTORE_ALIAS)) {
+            return (SecretKey) keyStore.getKey(KEYSTORE_ALIAS, null);
+        }
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE_PROVIDER);
+        generator.init(new KeyGenParameterSpec.Builder(KEYSTORE_ALIAS, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+
+    @NonNull
+    private static byte[] readFile(@NonNull File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return data;
+        }
+    }
+
+    private static void writeFile(@NonNull File file, @NonNull byte[] data) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            raf.setLength(0);
+            raf.write(data);
+            raf.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Unable to write " + file);
+        }
+    }
+
+    /**
+     * Journal file for one PowerAuth instance.
+     * <p>
+     * Record format is a 4 byte length, followed by IV and AES-GCM encrypted state.
+     * A zero length marks the end of the journal.
+     */
+    private class Journal {
+
+        private final File file;
+        private final SecretKey key;
+        private final Cipher cipher;
+        private MappedByteBuffer buffer;
+        private byte[] state;
+
+        Journal(@NonNull File file, @NonNull SecretKey key) throws IOException, GeneralSecurityException {
+            this.file = file;
+            this.key = key;
+            this.cipher = Cipher.getInstance(CIPHER);
+            if (file.isFile()) {
+                map(file, Math.max((int) file.length(), DEFAULT_CAPACITY));
+                replay();
+            } else {
+                map(file, DEFAULT_CAPACITY);
+            }
+        }
+
+        private void map(@NonNull File target, int capacity) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+                if (raf.length() < capacity) {
+                    raf.setLength(capacity);
+                }
+                // The mapping stays valid after the file is closed.
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+        }
+
+        /**
+         * Reads all records and keeps the last one that can be decrypted. A torn record at
+         * the end of the journal fails authentication and is overwritten by the next append.
+         */
+        private void replay() throws GeneralSecurityException {
+            int position = 0;
+            int validEnd = 0;
+            while (position + 4 <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length <= IV_SIZE || position + 4 + length > buffer.capacity()) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                buffer.position(position + 4);
+                buffer.get(record);
+                byte[] decrypted = decrypt(record);
+                if (decrypted == null) {
+                    break;
+                }
+                state = decrypted;
+                position += 4 + length;
+                validEnd = position;
+            }
+            buffer.position(validEnd);
+        }
+
+        void append(@NonNull byte[] newState) throws IOException, GeneralSecurityException {
+            byte[] record = encrypt(newState);
+            int required = 4 + record.length + 4;
+            if (buffer.remaining() < required) {
+                compact(record);
+            } else {
+                int position = buffer.position();
+                // Write the terminator first, then the record body, and the length as the last step,
+                // so an interrupted append never looks like a valid record.
+                buffer.putInt(position + 4 + record.length, 0);
+                buffer.position(position + 4);
+                buffer.put(record);
+                buffer.putInt(position, record.length);
+                buffer.force();
+            }
+            state = newState.clone();
+        }
+
+        /**
+         * Replaces the journal with a new file that contains just the current state.
+         */
+        void rewrite() throws IOException, GeneralSecurityException {
+            compact(state == null ? null : encrypt(state));
+        }
+
+        /**
+         * Replaces the journal with a new file that contains just the given record,
+         * and wipes the old file.
+         */
+        private void compact(@Nullable byte[] record) throws IOException {
+            int length = record == null ? 0 : 4 + record.length;
+            int capacity = DEFAULT_CAPACITY;
+            while (capacity < 2 * (length + 4)) {
+                capacity *= 2;
+            }
+            File tmp = new File(file.getPath() + ".tmp");
+            if (tmp.exists() && !tmp.delete()) {
+                throw new IOException("Unable to delete " + tmp);
+            }
+            MappedByteBuffer old = buffer;
+            map(tmp, capacity);
+            if (record != null) {
+                buffer.putInt(record.length);
+                buffer.put(record);
+            }
+            buffer.putInt(buffer.position(), 0);
+            buffer.force();
+            if (!tmp.renameTo(file)) {
+                buffer = old;
+                throw new IOException("Unable to replace " + file);
+            }
+            // The old mapping still points to the replaced file, overwrite the older records.
+            old.clear();
+            byte[] zeros = new byte[Math.min(old.capacity(), 4096)];
+            while (old.hasRemaining()) {
+                old.put(zeros, 0, Math.min(zeros.length, old.remaining()));
+            }
+            old.force();
+        }
+
+        @NonNull
+        private byte[] encrypt(@NonNull byte[] plaintext) throws GeneralSecurityException {
+            byte[] iv = new byte[IV_SIZE];
+            random.nextBytes(iv);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            byte[] record = new byte[IV_SIZE + cipher.getOutputSize(plaintext.length)];
+            System.arraycopy(iv, 0, record, 0, IV_SIZE);
+            cipher.doFinal(plaintext, 0, plaintext.length, record, IV_SIZE);
+            return record;
+        }
+
+        @Nullable
+        private byte[] decrypt(@NonNull byte[] record) throws GeneralSecurityException {
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, record, 0, IV_SIZE));
+            try {
+                return cipher.doFinal(record, IV_SIZE, record.length - IV_SIZE);
+            } catch (GeneralSecurityException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableMap;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size in-memory log of recently finished module operations.
+ * <p>
+ * Recording is lock-free. Each entry takes a sequence number from a shared cursor, marks the slot
+ * for that number as busy, writes its fields and then publishes the sequence number in the slot.
+ * When the ring wraps while another writer still holds the slot, the entry takes the next number
+ * instead, so two writers never mix their fields in one slot. The exporter skips slots that are
+ * being overwritten at the same time. Entries contain only the operation name, timing,
+ * thread name, error code, whether the call was merged into another one and the last known
+ * activation state, never any secrets.
+ * <p>
+ * When system tracing is active (Android 10+), each operation is also reported as an async
+ * {@link Trace} section. The async section API is newer than the SDK the library compiles
+ * against, so it's called through reflection. Whether tracing is active is checked at most once
+ * per second, so operations started within a second after the tracing starts may be missing.
+ * <p>
+ * The thread is kept with the entry and its name is read only when the trace is exported.
+ */
+class OperationTrace {
+
+    /** Default number of entries kept in the ring. Must be a power of two. */
+    static final int DEFAULT_CAPACITY = 256;
+
+    /** Activation state recorded before the first status is fetched. */
+    static final int STATE_UNKNOWN = -1;
+
+    private static final String SECTION_PREFIX = "PowerAuth.";
+
+    /** Sequence of a slot that a writer is filling. */
+    private static final long BUSY = -2;
+    /** Number of slots an entry tries before it's dropped, tracing must never stall an operation. */
+    private static final int MAX_CLAIM_ATTEMPTS = 4;
+
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLongArray sequences;
+    private final String[] operations;
+    private final Thread[] threads;
+    private final String[] errorCodes;
+    private final long[] startNanos;
+    private final long[] endNanos;
+    private final long[] waitMillis;
+    private final boolean[] coalescedFlags;
+    private final int[] activationStates;
+
+    private final AtomicInteger sectionCookie = new AtomicInteger();
+    private volatile int activationState = STATE_UNKNOWN;
+
+    OperationTrace(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two.");
+        }
+        mask = capacity - 1;
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, -1);
+        }
+        operations = new String[capacity];
+        threads = new Thread[capacity];
+        errorCodes = new String[capacity];
+        startNanos = new long[capacity];
+        endNanos = new long[capacity];
+        waitMillis = new long[capacity];
+        coalescedFlags = new boolean[capacity];
+        activationStates = new int[capacity];
+    }
+
+    /**
+     * Sets the activation state recorded with the following entries.
+     *
+     * @param state state from {@code ActivationStatus}, or {@link #STATE_UNKNOWN}
+     */
+    void setActivationState(int state) {
+        activationState = state;
+    }
+
+    /**
+     * Starts tracing an operation that reports its result through a promise.
+     *
+     * @param operation name of the operation
+     * @param promise promise passed from the bridge
+     * @return promise that records the entry when it's settled and then forwards the result
+     */
+    @NonNull
+    Promise begin(@NonNull String operation, @NonNull Promise promise) {
+        return new Span(operation, promise);
+    }
+
+    /**
+     * Records an operation that has no promise.
+     *
+     * @param operation name of the operation
+     * @param startNanos time when the operation started, from {@link SystemClock#elapsedRealtimeNanos()}
+     */
+    void record(@NonNull String operation, long startNanos) {
+        record(operation, Thread.currentThread(), startNanos, SystemClock.elapsedRealtimeNanos(), 0, false, null);
+    }
+
+    private void record(String operation, Thread thread, long start, long end, long wait, boolean coalesced, String errorCode) {
+        long seq = -1;
+        int slot = 0;
+        for (int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS && seq < 0; attempt++) {
+            long candidate = cursor.getAndIncrement();
+            slot = (int) (candidate & mask);
+            long current = sequences.get(slot);
+            if (current != BUSY && current < candidate && sequences.compareAndSet(slot, current, BUSY)) {
+                seq = candidate;
+            }
+        }
+        if (seq < 0) {
+            return;
+        }
+        operations[slot] = operation;
+        threads[slot] = thread;
+        errorCodes[slot] = errorCode;
+        startNanos[slot] = start;
+        endNanos[slot] = end;
+        waitMillis[slot] = wait;
+        coalescedFlags[slot] = coalesced;
+        activationStates[slot] = activationState;
+        sequences.set(slot, seq);
+    }
+
+    /**
+     * Exports recorded entries, from the oldest to the newest, as a compact JSON document.
+     * Times are in nanoseconds of {@link SystemClock#elapsedRealtimeNanos()}. Fields {@code now}
+     * and {@code epochMs} contain the same moment in both time bases, to allow conversion to wall
+     * clock time. Field {@code waitMs} of a coalesced entry is the queue time of the operation
+     * it was merged into.
+     *
+     * @return JSON document
+     */
+    @NonNull
+    String exportJson() {
+        long last = cursor.get();
+        long first = Math.max(0, last - (mask + 1));
+        StringBuilder sb = new StringBuilder(64 + (int) (last - first) * 96);
+        sb.append("{\"v\":2,\"now\":").append(SystemClock.elapsedRealtimeNanos())
+                .append(",\"epochMs\":").append(System.currentTimeMillis())
+                .append(",\"fields\":[\"op\",\"start\",\"end\",\"waitMs\",\"coalesced\",\"thread\",\"error\",\"state\"],\"entries\":[");
+        boolean empty = true;
+        for (long seq = first; seq < last; seq++) {
+            int slot = (int) (seq & mask);
+            if (sequences.get(slot) != seq) {
+                continue;
+            }
+            String operation = operations[slot];
+            Thread thread = threads[slot];
+            String errorCode = errorCodes[slot];
+            long start = startNanos[slot];
+            long end = endNanos[slot];
+            long wait = waitMillis[slot];
+            boolean coalesced = coalescedFlags[slot];
+            int state = activationStates[slot];
+            if (sequences.get(slot) != seq) {
+                // The slot was overwritten while we were reading it.
+                continue;
+            }
+            if (!empty) {
+                sb.append(',');
+            }
+            empty = false;
+            sb.append('[');
+            appendString(sb, operation).append(',').append(start).append(',').append(end).append(',').append(wait).append(',').append(coalesced).append(',');
+            appendString(sb, thread != null ? thread.getName() : null).append(',');
+            appendString(sb, errorCode).append(',').append(state).append(']');
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static StringBuilder appendString(StringBuilder sb, @Nullable String value) {
+        if (value == null) {
+            return sb.append("null");
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"');
+    }
+
+    /**
+     * Promise wrapper recording one operation.
+     */
+    private class Span extends CompletionPromise {
+
+        private final String operation;
+        private final Promise promise;
+        private final Thread thread;
+        private final long start;
+        private final int cookie;
+        private volatile long wait;
+        private volatile boolean coalesced;
+
+        Span(@NonNull String operation, @NonNull Promise promise) {
+            this.operation = operation;
+            this.promise = promise;
+            this.thread = Thread.currentThread();
+            this.start = SystemClock.elapsedRealtimeNanos();
+            if (AsyncSection.isEnabled()) {
+                cookie = sectionCookie.incrementAndGet();
+                AsyncSection.begin(SECTION_PREFIX + operation, cookie);
+            } else {
+                cookie = 0;
+            }
+        }
+
+        @Override
+        void onAdmitted(long waitMillis) {
+            wait = waitMillis;
+        }
+
+        @Override
+        void onCoalesced() {
+            coalesced = true;
+        }
+
+        private void finish(@Nullable String errorCode) {
+            record(operation, thread, start, SystemClock.elapsedRealtimeNanos(), wait, coalesced, errorCode);
+            if (cookie != 0) {
+                AsyncSection.end(SECTION_PREFIX + operation, cookie);
+            }
+        }
+
+        @Override
+        protected void onResolve(@Nullable Object value) {
+            finish(null);
+            promise.resolve(value);
+        }
+
+        @Override
+        protected void onReject(@Nullable String code, @Nullable String message, @Nullable Throwable throwable, @Nullable WritableMap userInfo) {
+            finish(code);
+            promise.reject(code, message, throwable, userInfo);
+        }
+    }
+
+    /**
+     * Async sections of {@link Trace}, available since Android 10 (API 29). The methods are looked
+     * up once and any failure disables the sections, tracing must never break an operation.
+     */
+    private static class AsyncSection {
+
+        private static final int ANDROID_10 = 29;
+        private static final long RECHECK_INTERVAL_NANOS = 1000000000L;
+
+        private static final Method IS_ENABLED;
+        private static final Method BEGIN;
+        private static final Method END;
+
+        static {
+            Method isEnabled = null;
+            Method begin = null;
+            Method end = null;
+            if (Build.VERSION.SDK_INT >= ANDROID_10) {
+                try {
+                    isEnabled = Trace.class.getMethod("isEnabled");
+                    begin = Trace.class.getMethod("beginAsyncSection", String.class, int.class);
+                    end = Trace.class.getMethod("endAsyncSection", String.class, int.class);
+                } catch (Exception e) {
+                    isEnabled = null;
+                }
+            }
+            IS_ENABLED = isEnabled;
+            BEGIN = begin;
+            END = end;
+        }
+
+        private static volatile boolean sEnabled;
+        private static volatile long sNextCheckNanos;
+
+        /**
+         * @return true when system tracing is active, as of the last check
+         */
+        static boolean isEnabled() {
+            if (IS_ENABLED == null) {
+                return false;
+            }
+            long now = SystemClock.elapsedRealtimeNanos();
+            if (now < sNextCheckNanos) {
+                return sEnabled;
+            }
+            boolean enabled;
+            try {
+                enabled = Boolean.TRUE.equals(IS_ENABLED.invoke(null));
+            } catch (Exception e) {
+                enabled = false;
+            }
+            sEnabled = enabled;
+            sNextCheckNanos = now + RECHECK_INTERVAL_NANOS;
+            return enabled;
+        }
+
+        static void begin(@NonNull String name, int cookie) {
+            invoke(BEGIN, name, cookie);
+        }
+
+        static void end(@NonNull String name, int cookie) {
+            invoke(END, name, cookie);
+        }
+
+        private static void invoke(@Nullable Method method, @NonNull String name, int cookie) {
+            if (method != null) {
+                try {
+                    method.invoke(null, name, cookie);
+                } catch (Exception e) {
+                    // Ignored, the section is just missing in the system trace.
+                }
+            }
+        }
+    }
+}
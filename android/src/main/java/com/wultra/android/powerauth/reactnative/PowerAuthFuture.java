@@ -0,0 +1,176 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of an asynchronous operation started by {@link PowerAuthNativeApi}.
+ * <p>
+ * {@code CompletableFuture} requires Android 7.0, so this is a minimal replacement. The result
+ * can be awaited with {@link #get()} from a background thread, or observed with
+ * {@link #addListener(Listener)}. Listeners are called on the thread that completes
+ * the operation, which is usually the main thread, or immediately when the future is already
+ * completed.
+ *
+ * @param <T> type of the result
+ */
+public final class PowerAuthFuture<T> implements Future<T> {
+
+    /**
+     * Listener notified when the operation completes.
+     *
+     * @param <T> type of the result
+     */
+    public interface Listener<T> {
+        /**
+         * Called when the operation succeeds.
+         *
+         * @param value result of the operation
+         */
+        void onSuccess(@Nullable T value);
+
+        /**
+         * Called when the operation fails.
+         *
+         * @param error cause of the failure
+         */
+        void onFailure(@NonNull Throwable error);
+    }
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private List<Listener<T>> listeners = new ArrayList<>();
+    private T value;
+    private Throwable error;
+
+    PowerAuthFuture() {
+    }
+
+    /**
+     * Adds a listener notified when the operation completes.
+     *
+     * @param listener listener to add
+     * @return this future
+     */
+    @NonNull
+    public PowerAuthFuture<T> addListener(@NonNull Listener<T> listener) {
+        synchronized (this) {
+            if (listeners != null) {
+                listeners.add(listener);
+                return this;
+            }
+        }
+        notify(listener);
+        return this;
+    }
+
+    /**
+     * Completes the future with a value.
+     *
+     * @param value result of the operation
+     * @return false when the future was already completed
+     */
+    boolean complete(@Nullable T value) {
+        return finish(value, null);
+    }
+
+    /**
+     * Completes the future with a failure.
+     *
+     * @param error cause of the failure
+     * @return false when the future was already completed
+     */
+    boolean fail(@NonNull Throwable error) {
+        return finish(null, error);
+    }
+
+    private boolean finish(@Nullable T value, @Nullable Throwable error) {
+        List<Listener<T>> targets;
+        synchronized (this) {
+            if (listeners == null) {
+                return false;
+            }
+            this.value = value;
+            this.error = error;
+            targets = listeners;
+            listeners = null;
+        }
+        latch.countDown();
+        for (Listener<T> listener : targets) {
+            notify(listener);
+        }
+        return true;
+    }
+
+    private void notify(@NonNull Listener<T> listener) {
+        if (error != null) {
+            listener.onFailure(error);
+        } else {
+            listener.onSuccess(value);
+        }
+    }
+
+    /**
+     * PowerAuth operations cannot be canceled once started.
+     *
+     * @return always false
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return latch.getCount() == 0;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return getResult();
+    }
+
+    @Override
+    public T get(long timeout, @NonNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResult();
+    }
+
+    private T getResult() throws ExecutionException {
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return value;
+    }
+}
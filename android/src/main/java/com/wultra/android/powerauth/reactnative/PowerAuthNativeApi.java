@@ -0,0 +1,271 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableMap;
+
+import io.getlime.security.powerauth.core.ActivationStatus;
+import io.getlime.security.powerauth.exception.PowerAuthErrorCodes;
+import io.getlime.security.powerauth.exception.PowerAuthErrorException;
+import io.getlime.security.powerauth.networking.response.IActivationStatusListener;
+import io.getlime.security.powerauth.networking.response.IChangePasswordListener;
+import io.getlime.security.powerauth.networking.response.IValidatePasswordListener;
+import io.getlime.security.powerauth.sdk.PowerAuthAuthentication;
+import io.getlime.security.powerauth.sdk.PowerAuthAuthorizationHttpHeader;
+import io.getlime.security.powerauth.sdk.PowerAuthSDK;
+
+/**
+ * Thread-safe Java API for the native parts of a React Native application.
+ * <p>
+ * The API works with the same {@link PowerAuthSDK} instance as the Javascript module, so the
+ * application doesn't need a second instance with its own state. Network operations share
+ * the module's concurrency limit and are recorded in its operation trace, but they don't go
+ * through the React Native bridge.
+ * <p>
+ * Use {@link PowerAuthRNPackage#getNativeApi(android.content.Context)} to get the API. The API doesn't depend on
+ * the Javascript module, operations fail with {@link ModuleException} only until the PowerAuth
+ * instance is configured, natively or from Javascript.
+ */
+public final class PowerAuthNativeApi {
+
+    /**
+     * Failure produced by the module itself, not by the PowerAuth SDK.
+     */
+    public static class ModuleException extends Exception {
+
+        private final String code;
+
+        ModuleException(@NonNull String code, @Nullable String message) {
+            super(message);
+            this.code = code;
+        }
+
+        /**
+         * @return error code, the same as reported to Javascript
+         */
+        @NonNull
+        public String getCode() {
+            return code;
+        }
+    }
+
+    private final SharedPowerAuth shared;
+
+    PowerAuthNativeApi(@NonNull SharedPowerAuth shared) {
+        this.shared = shared;
+    }
+
+    /**
+     * @return shared PowerAuth instance, or null when it's not configured yet
+     */
+    @Nullable
+    public PowerAuthSDK getPowerAuthSDK() {
+        return shared.getPowerAuth();
+    }
+
+    /**
+     * Tells the module that the biometry factor may have changed. The module caches whether
+     * the biometry factor is set, so call this after adding or removing the factor, or removing
+     * the activation, through {@link #getPowerAuthSDK()}.
+     */
+    public void invalidateBiometryCache() {
+        shared.invalidateBiometryCache();
+    }
+
+    /**
+     * @return true when the module is configured
+     */
+    public boolean isConfigured() {
+        return getPowerAuthSDK() != null;
+    }
+
+    /**
+     * Fetches the activation status.
+     *
+     * @return future with the activation status
+     */
+    @NonNull
+    public PowerAuthFuture<ActivationStatus> fetchActivationStatus() {
+        final PowerAuthFuture<ActivationStatus> future = new PowerAuthFuture<>();
+        final PowerAuthSDK powerAuth = requireConfigured(future);
+        if (powerAuth != null) {
+            Promise promise = shared.getTrace().begin("native.fetchActivationStatus", completing(future));
+            shared.getAdmission().submit("native.fetchActivationStatus", AdmissionController.PRIORITY_BACKGROUND, promise, new AdmissionController.Operation() {
+                @Override
+                public void start(@NonNull final Promise promise) {
+                    powerAuth.fetchActivationStatusWithCallback(shared.getContext(), new IActivationStatusListener() {
+                        @Override
+                        public void onActivationStatusSucceed(ActivationStatus status) {
+                            shared.getTrace().setActivationState(status.state);
+                            promise.resolve(status);
+                        }
+
+                        @Override
+                        public void onActivationStatusFailed(Throwable t) {
+                            reject(promise, t);
+                        }
+                    });
+                }
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Validates the password on the server. Concurrent calls with the same password share
+     * one request.
+     *
+     * @param password password to validate
+     * @return future completed when the password is valid
+     */
+    @NonNull
+    public PowerAuthFuture<Void> validatePassword(@NonNull final String password) {
+        final PowerAuthFuture<Void> future = new PowerAuthFuture<>();
+        final PowerAuthSDK powerAuth = requireConfigured(future);
+        if (powerAuth != null) {
+            Promise promise = shared.getTrace().begin("native.validatePassword", completing(future));
+            String key = AdmissionController.operationKey("native.validatePassword", password);
+            shared.getAdmission().submitSingleFlight(key, AdmissionController.PRIORITY_INTERACTIVE, promise, new AdmissionController.Operation() {
+                @Override
+                public void start(@NonNull final Promise promise) {
+                    powerAuth.validatePasswordCorrect(shared.getContext(), password, new IValidatePasswordListener() {
+                        @Override
+                        public void onPasswordValid() {
+                            promise.resolve(null);
+                        }
+
+                        @Override
+                        public void onPasswordValidationFailed(Throwable t) {
+                            reject(promise, t);
+                        }
+                    });
+                }
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Changes the password. The old password is validated on the server. Concurrent calls with
+     * the same arguments share one request.
+     *
+     * @param oldPassword current password
+     * @param newPassword new password
+     * @return future completed when the password is changed
+     */
+    @NonNull
+    public PowerAuthFuture<Void> changePassword(@NonNull final String oldPassword, @NonNull final String newPassword) {
+        final PowerAuthFuture<Void> future = new PowerAuthFuture<>();
+        final PowerAuthSDK powerAuth = requireConfigured(future);
+        if (powerAuth != null) {
+            Promise promise = shared.getTrace().begin("native.changePassword", completing(future));
+            String key = AdmissionController.operationKey("native.changePassword", oldPassword, newPassword);
+            shared.getAdmission().submitSingleFlight(key, AdmissionController.PRIORITY_INTERACTIVE, promise, new AdmissionController.Operation() {
+                @Override
+                public void start(@NonNull final Promise promise) {
+                    powerAuth.changePassword(shared.getContext(), oldPassword, newPassword, new IChangePasswordListener() {
+                        @Override
+                        public void onPasswordChangeSucceed() {
+                            promise.resolve(null);
+                        }
+
+                        @Override
+                        public void onPasswordChangeFailed(Throwable t) {
+                            reject(promise, t);
+                        }
+                    });
+                }
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Calculates the PowerAuth signature header for a request. The signature is calculated
+     * offline, on the calling thread, and the returned future is already completed.
+     *
+     * @param authentication factors used for the signature
+     * @param method HTTP method of the request
+     * @param uriId identifier of the endpoint
+     * @param body body of the request, if any
+     * @return future with the signature header
+     */
+    @NonNull
+    public PowerAuthFuture<PowerAuthAuthorizationHttpHeader> requestSignature(@NonNull PowerAuthAuthentication authentication, @NonNull String method, @NonNull String uriId, @Nullable byte[] body) {
+        PowerAuthFuture<PowerAuthAuthorizationHttpHeader> future = new PowerAuthFuture<>();
+        PowerAuthSDK powerAuth = requireConfigured(future);
+        if (powerAuth != null) {
+            Promise promise = shared.getTrace().begin("native.requestSignature", completing(future));
+            PowerAuthAuthorizationHttpHeader header = powerAuth.requestSignatureWithAuthentication(shared.getContext(), authentication, method, uriId, body);
+            if (header.powerAuthErrorCode == PowerAuthErrorCodes.PA2Succeed) {
+                promise.resolve(header);
+            } else {
+                reject(promise, new PowerAuthErrorException(header.powerAuthErrorCode, "Signature failed."));
+            }
+        }
+        return future;
+    }
+
+    /**
+     * @return the PowerAuth instance, or null when it's not configured and the future was failed
+     */
+    @Nullable
+    private PowerAuthSDK requireConfigured(@NonNull PowerAuthFuture<?> future) {
+        PowerAuthSDK powerAuth = shared.getPowerAuth();
+        if (powerAuth == null) {
+            future.fail(new ModuleException(ErrorTable.REACT_NATIVE_ERROR, "PowerAuth module is not configured."));
+            return null;
+        }
+        return powerAuth;
+    }
+
+    /**
+     * Rejects the promise with the error code from {@link ErrorTable}, so the trace records
+     * the same code as for Javascript calls. Unlike {@link ErrorTable#reject(Promise, Throwable)},
+     * no user info map is created, because the error never goes through the bridge.
+     */
+    private static void reject(@NonNull Promise promise, @NonNull Throwable t) {
+        promise.reject(ErrorTable.forThrowable(t).code, t.getMessage(), t);
+    }
+
+    /**
+     * Creates a promise that completes the future.
+     */
+    @NonNull
+    private static <T> Promise completing(@NonNull final PowerAuthFuture<T> future) {
+        return new CompletionPromise() {
+            @Override
+            @SuppressWarnings("unchecked")
+            protected void onResolve(@Nullable Object value) {
+                future.complete((T) value);
+            }
+
+            @Override
+            protected void onReject(@Nullable String code, @Nullable String message, @Nullable Throwable throwable, @Nullable WritableMap userInfo) {
+                if (throwable != null) {
+                    future.fail(throwable);
+                } else {
+                    future.fail(new ModuleException(code != null ? code : ErrorTable.REACT_NATIVE_ERROR, message));
+                }
+            }
+        };
+    }
+}
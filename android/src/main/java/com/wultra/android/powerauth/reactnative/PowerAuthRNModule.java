@@ -17,6 +17,7 @@
 package com.wultra.android.powerauth.reactnative;
 
 import android.os.Build;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import android.util.Base64;
@@ -24,23 +25,29 @@ import android.util.Base64;
 import androidx.fragment.app.FragmentActivity;
 
 import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.LifecycleEventListener;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.module.annotations.ReactModule;
 
 import java.lang.*;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.getlime.security.powerauth.biometry.BiometricKeyData;
 import io.getlime.security.powerauth.biometry.IAddBiometryFactorListener;
 import io.getlime.security.powerauth.biometry.IBiometricAuthenticationCallback;
 import io.getlime.security.powerauth.biometry.ICommitActivationWithBiometryListener;
 import io.getlime.security.powerauth.sdk.*;
+import io.getlime.security.powerauth.sdk.impl.ISavePowerAuthStateListener;
 import io.getlime.security.powerauth.networking.ssl.*;
 import io.getlime.security.powerauth.networking.response.*;
 import io.getlime.security.powerauth.core.*;
@@ -49,41 +56,80 @@ import io.getlime.security.powerauth.util.otp.Otp;
 import io.getlime.security.powerauth.util.otp.OtpUtil;
 
 @SuppressWarnings("unused")
-public class PowerAuthRNModule extends ReactContextBaseJavaModule {
+@ReactModule(name = PowerAuthRNModule.NAME)
+public class PowerAuthRNModule extends ReactContextBaseJavaModule implements LifecycleEventListener {
+
+    static final String NAME = "PowerAuth";
+
+    private static final int MAX_SIGNATURE_SESSIONS = 8;
 
     private ReactApplicationContext context;
-    private PowerAuthSDK powerAuth;
+    private final SharedPowerAuth shared;
+    private final AdmissionController admission;
+    private final BiometryCapabilityCache biometryCache;
+    private final OperationTrace trace;
+    private final Map<String, SignatureSession> signatureSessions = new ConcurrentHashMap<>();
 
     public PowerAuthRNModule(ReactApplicationContext context) {
+        this(context, new SharedPowerAuth());
+    }
+
+    PowerAuthRNModule(@NonNull ReactApplicationContext context, @NonNull SharedPowerAuth shared) {
         super(context);
         this.context = context;
+        this.shared = shared;
+        this.admission = shared.getAdmission();
+        this.trace = shared.getTrace();
+        shared.attachContext(context);
+        this.biometryCache = shared.getBiometryCache();
+        context.addLifecycleEventListener(this);
+    }
+
+    @Nullable
+    PowerAuthSDK getPowerAuth() {
+        return shared.getPowerAuth();
     }
 
     @NonNull
     @Override
     public String getName() {
-        return "PowerAuth";
+        return NAME;
     }
 
-    @ReactMethod
-    public void isConfigured(Promise promise) {
-        promise.resolve(this.powerAuth != null);
+    @Override
+    public void onHostResume() {
+        // Enrolled biometry may have changed while the application was in the background.
+        biometryCache.invalidate();
     }
 
-    void configure(@NonNull PowerAuthSDK.Builder builder) throws IllegalStateException, IllegalArgumentException {
-        if (powerAuth != null) {
-            throw new IllegalStateException("PowerAuth module was already configured.");
+    @Override
+    public void onHostPause() {
+        PowerAuthSDK powerAuth = getPowerAuth();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && powerAuth != null && powerAuth.hasValidActivation()) {
+            MaintenanceJobService.schedule(context, shared);
         }
+    }
 
-        try {
-            this.powerAuth = builder.build(this.context);
-        } catch (PowerAuthErrorException e) {
-            throw new IllegalArgumentException("Unable to configure with provided data", e);
-        }
+    @Override
+    public void onHostDestroy() {
+    }
+
+    @Override
+    public void onCatalystInstanceDestroy() {
+        super.onCatalystInstanceDestroy();
+        // Javascript that started the sessions is gone, nobody can finish them.
+        signatureSessions.clear();
+    }
+
+    @ReactMethod
+    public void isConfigured(Promise bridgePromise) {
+        final Promise promise = trace.begin("isConfigured", bridgePromise);
+        promise.resolve(getPowerAuth() != null);
     }
 
     @ReactMethod
-    public void configure(String instanceId, String appKey, String appSecret, String masterServerPublicKey, String baseEndpointUrl, boolean enableUnsecureTraffic, Promise promise) {
+    public void configure(String instanceId, String appKey, String appSecret, String masterServerPublicKey, String baseEndpointUrl, boolean enableUnsecureTraffic, Promise bridgePromise) {
+        final Promise promise = trace.begin("configure", bridgePromise);
         PowerAuthConfiguration paConfig = new PowerAuthConfiguration.Builder(
                 instanceId,
                 baseEndpointUrl,
@@ -99,61 +145,53 @@ public class PowerAuthRNModule extends ReactContextBaseJavaModule {
             paClientConfigBuilder.allowUnsecuredConnection(true);
         }
         try {
-            configure(new PowerAuthSDK.Builder(paConfig).clientConfiguration(paClientConfigBuilder.build()));
+            shared.configureFromJs(instanceId, new PowerAuthSDK.Builder(paConfig).clientConfiguration(paClientConfigBuilder.build()));
             promise.resolve(true);
         } catch (Exception e) {
-            promise.reject("PA2ReactNativeError", "Failed to configure");
+            ErrorTable.reject(promise, "PA2ReactNativeError", "Failed to configure");
         }
     }
 
     @ReactMethod
-    public void hasValidActivation(Promise promise) {
-        promise.resolve(this.powerAuth.hasValidActivation());
+    public void hasValidActivation(Promise bridgePromise) {
+        final Promise promise = trace.begin("hasValidActivation", bridgePromise);
+        promise.resolve(getPowerAuth().hasValidActivation());
     }
 
     @ReactMethod
-    public void canStartActivation(Promise promise) {
-        promise.resolve(this.powerAuth.canStartActivation());
+    public void canStartActivation(Promise bridgePromise) {
+        final Promise promise = trace.begin("canStartActivation", bridgePromise);
+        promise.resolve(getPowerAuth().canStartActivation());
     }
 
     @ReactMethod
-    public void hasPendingActivation(Promise promise) {
-        promise.resolve(this.powerAuth.hasPendingActivation());
+    public void hasPendingActivation(Promise bridgePromise) {
+        final Promise promise = trace.begin("hasPendingActivation", bridgePromise);
+        promise.resolve(getPowerAuth().hasPendingActivation());
     }
 
     @ReactMethod
-    public void activationIdentifier(Promise promise) {
-        promise.resolve(this.powerAuth.getActivationIdentifier());
+    public void activationIdentifier(Promise bridgePromise) {
+        final Promise promise = trace.begin("activationIdentifier", bridgePromise);
+        promise.resolve(getPowerAuth().getActivationIdentifier());
     }
 
     @ReactMethod
-    public  void activationFingerprint(Promise promise) {
-        promise.resolve(this.powerAuth.getActivationFingerprint());
+    public  void activationFingerprint(Promise bridgePromise) {
+        final Promise promise = trace.begin("activationFingerprint", bridgePromise);
+        promise.resolve(getPowerAuth().getActivationFingerprint());
     }
 
     @ReactMethod
-    public void fetchActivationStatus(final Promise promise) {
-
-        this.powerAuth.fetchActivationStatusWithCallback(this.context, new IActivationStatusListener() {
-            @Override
-            public void onActivationStatusSucceed(ActivationStatus status) {
-                WritableMap map = Arguments.createMap();
-                map.putString("state", PowerAuthRNModule.getStatusCode(status.state));
-                map.putInt("failCount", status.failCount);
-                map.putInt("maxFailCount", status.maxFailCount);
-                map.putInt("remainingAttempts", status.getRemainingAttempts());
-                promise.resolve(map);
-            }
+    public void fetchActivationStatus(Promise bridgePromise) {
+        final Promise promise = trace.begin("fetchActivationStatus", bridgePromise);
 
-            @Override
-            public void onActivationStatusFailed(Throwable t) {
-                promise.reject(PowerAuthRNModule.getErrorCodeFromThrowable(t) ,t);
-            }
-        });
+        AdmissionPolicy.fetchActivationStatus(admission, promise, shared.fetchActivationStatusOperation());
     }
 
     @ReactMethod
-    public void createActivation(ReadableMap activation, final Promise promise) {
+    public void createActivation(ReadableMap activation, Promise bridgePromise) {
+        final Promise promise = trace.begin("createActivation", bridgePromise);
 
         PowerAuthActivation.Builder paActivation = null;
 
@@ -176,7 +214,7 @@ public class PowerAuthRNModule extends ReactContextBaseJavaModule {
             }
 
             if (paActivation == null) {
-                promise.reject("PA2RNInvalidActivationObject", "Activation object is invalid.");
+                ErrorTable.reject(promise, "PA2RNInvalidActivationObject", "Activation object is invalid.");
                 return;
             }
 
@@ -192,40 +230,47 @@ public class PowerAuthRNModule extends ReactContextBaseJavaModule {
                 paActivation.setAdditionalActivationOtp(additionalActivationOtp);
             }
 
-            this.powerAuth.createActivation(paActivation.build(), new ICreateActivationListener() {
+            final PowerAuthActivation paActivationObject = paActivation.build();
+            AdmissionPolicy.interactive(admission, promise, new AdmissionController.Operation() {
                 @Override
-                public void onActivationCreateSucceed(@NonNull CreateActivationResult result) {
-                    WritableMap map = Arguments.createMap();
-                    map.putString("activationFingerprint", result.getActivationFingerprint());
-                    RecoveryData rData = result.getRecoveryData();
-                    if (rData != null) {
-                        WritableMap recoveryMap = Arguments.createMap();
-                        recoveryMap.putString("recoveryCode", rData.recoveryCode);
-                        recoveryMap.putString("puk", rData.puk);
-                        map.putMap("activationRecovery", recoveryMap);
-                    } else {
-                        map.putMap("activationRecovery", null);
-                    }
-                    Map<String, Object> customAttributes = result.getCustomActivationAttributes();
-                    map.putMap("customAttributes", customAttributes == null ? null : Arguments.makeNativeMap(customAttributes));
-                    promise.resolve(map);
-                }
+                public void start(@NonNull final Promise promise) {
+                    getPowerAuth().createActivation(paActivationObject, new ICreateActivationListener() {
+                        @Override
+                        public void onActivationCreateSucceed(@NonNull CreateActivationResult result) {
+                            WritableMap map = Arguments.createMap();
+                            map.putString("activationFingerprint", result.getActivationFingerprint());
+                            RecoveryData rData = result.getRecoveryData();
+                            if (rData != null) {
+                                WritableMap recoveryMap = Arguments.createMap();
+                                recoveryMap.putString("recoveryCode", rData.recoveryCode);
+                                recoveryMap.putString("puk", rData.puk);
+                                map.putMap("activationRecovery", recoveryMap);
+                            } else {
+                                map.putMap("activationRecovery", null);
+                            }
+                            Map<String, Object> customAttributes = result.getCustomActivationAttributes();
+                            map.putMap("customAttributes", customAttributes == null ? null : Arguments.makeNativeMap(customAttributes));
+                            promise.resolve(map);
+                        }
 
-                @Override
-                public void onActivationCreateFailed(@NonNull Throwable t) {
-                    promise.reject(PowerAuthRNModule.getErrorCodeFromThrowable(t) ,t);
+                        @Override
+                        public void onActivationCreateFailed(@NonNull Throwable t) {
+                            ErrorTable.reject(promise, t);
+                        }
+                    });
                 }
             });
         } catch (Exception e) {
-            promise.reject(PowerAuthRNModule.getErrorCodeFromThrowable(e) ,e);
+            ErrorTable.reject(promise, e);
         }
     }
 
     @ReactMethod
-    public void commitActivation(ReadableMap authMap, final Promise promise) {
+    public void commitActivation(ReadableMap authMap, Promise bridgePromise) {
+        final Promise promise = trace.begin("commitActivation", bridgePromise);
         PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
         if (auth.usePassword == null) {
-            promise.reject("PA2ReactNativeErrorPasswordNotSet", "Password is not set.");
+            ErrorTable.reject(promise, "PA2ReactNativeErrorPasswordNotSet", "Password is not set.");
             return;
         }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && authMap.getBoolean("useBiometry")) {
@@ -237,59 +282,85 @@ public class PowerAuthRNModule extends ReactContextBaseJavaModule {
             if (message == null) {
                 message = " "; // to prevent crash
             }
-            this.powerAuth.commitActivation(this.context, ((FragmentActivity) getCurrentActivity()).getSupportFragmentManager(), title, message, auth.usePassword, new ICommitActivationWithBiometryListener() {
+            getPowerAuth().commitActivation(this.context, ((FragmentActivity) getCurrentActivity()).getSupportFragmentManager(), title, message, auth.usePassword, new ICommitActivationWithBiometryListener() {
 
                 @Override
                 public void onBiometricDialogCancelled() {
-                    promise.reject("PA2ReactNativeError_BiometryCanceled", "Biometry dialog was canceled");
+                    ErrorTable.reject(promise, "PA2ReactNativeError_BiometryCanceled", "Biometry dialog was canceled");
                 }
 
                 @Override
                 public void onBiometricDialogSuccess() {
+                    biometryCache.invalidate();
                     promise.resolve(null);
                 }
 
                 @Override
                 public void onBiometricDialogFailed(@NonNull PowerAuthErrorException error) {
-                    promise.reject("PA2ReactNativeError_BiometryFailed", "Biometry dialog failed");
+                    ErrorTable.reject(promise, "PA2ReactNativeError_BiometryFailed", "Biometry dialog failed");
                 }
             });
         } else {
-            int result = this.powerAuth.commitActivationWithPassword(this.context, auth.usePassword);
+            int result = getPowerAuth().commitActivationWithPassword(this.context, auth.usePassword);
             if (result == PowerAuthErrorCodes.PA2Succeed) {
                 promise.resolve(null);
             } else {
-                promise.reject(PowerAuthRNModule.getErrorCodeFromError(result), "Commit failed.");
+                ErrorTable.reject(promise, result, "Commit failed.");
             }
         }
     }
 
     @ReactMethod
-    public void removeActivationWithAuthentication(ReadableMap authMap, final Promise promise) {
-        PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
-        this.powerAuth.removeActivationWithAuthentication(this.context, auth, new IActivationRemoveListener() {
+    public void removeActivationWithAuthentication(ReadableMap authMap, Promise bridgePromise) {
+        final Promise promise = trace.begin("removeActivationWithAuthentication", bridgePromise);
+        final PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
+        AdmissionPolicy.interactive(admission, promise, new AdmissionController.Operation() {
             @Override
-            public void onActivationRemoveSucceed() {
-                promise.resolve(null);
-            }
+            public void start(@NonNull final Promise promise) {
+                getPowerAuth().removeActivationWithAuthentication(context, auth, new IActivationRemoveListener() {
+                    @Override
+                    public void onActivationRemoveSucceed() {
+                        biometryCache.invalidate();
+                        trace.setActivationState(OperationTrace.STATE_UNKNOWN);
+                        compactStateStorage();
+                        promise.resolve(null);
+                    }
 
-            @Override
-            public void onActivationRemoveFailed(Throwable t) {
-                promise.reject(PowerAuthRNModule.getErrorCodeFromThrowable(t) ,t);
+                    @Override
+                    public void onActivationRemoveFailed(Throwable t) {
+                        ErrorTable.reject(promise, t);
+                    }
+                });
             }
         });
     }
 
     @ReactMethod
     public void removeActivationLocal() {
-        this.powerAuth.removeActivationLocal(this.context);
+        long start = SystemClock.elapsedRealtimeNanos();
+        getPowerAuth().removeActivationLocal(this.context);
+        biometryCache.invalidate();
+        trace.setActivationState(OperationTrace.STATE_UNKNOWN);
+        compactStateStorage();
+        trace.record("removeActivationLocal", start);
+    }
+
+    /**
+     * Removes the records of the removed activation from the state storage, if it keeps them.
+     */
+    private void compactStateStorage() {
+        ISavePowerAuthStateListener stateStorage = shared.getStateStorage();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && stateStorage instanceof MappedFileStateStorage) {
+            ((MappedFileStateStorage) stateStorage).compact();
+        }
     }
 
     @ReactMethod
-    public void requestGetSignature(ReadableMap authMap, String uriId, @Nullable ReadableMap params, Promise promise) {
+    public void requestGetSignature(ReadableMap authMap, String uriId, @Nullable ReadableMap params, Promise bridgePromise) {
+        final Promise promise = trace.begin("requestGetSignature", bridgePromise);
         PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
         Map<String, String> paramMap = params == null ? null : PowerAuthRNModule.getStringMap(params);
-        PowerAuthAuthorizationHttpHeader header = this.powerAuth.requestGetSignatureWithAuthentication(this.context, auth, uriId, paramMap);
+        PowerAuthAuthorizationHttpHeader header = getPowerAuth().requestGetSignatureWithAuthentication(this.context, auth, uriId, paramMap);
 
         if (header.powerAuthErrorCode == PowerAuthErrorCodes.PA2Succeed) {
             WritableMap returnMap = Arguments.createMap();
@@ -297,73 +368,189 @@ public class PowerAuthRNModule extends ReactContextBaseJavaModule {
             returnMap.putString("value", header.value);
             promise.resolve(returnMap);
         } else {
-            promise.reject(PowerAuthRNModule.getErrorCodeFromError(header.powerAuthErrorCode), "Signature failed.");
+            ErrorTable.reject(promise, header.powerAuthErrorCode, "Signature failed.");
         }
     }
 
     @ReactMethod
-    public void requestSignature(ReadableMap authMap, String method, String uriId, @Nullable String body, Promise promise) {
+    public void requestSignature(ReadableMap authMap, String method, String uriId, @Nullable String body, Promise bridgePromise) {
+        final Promise promise = trace.begin("requestSignature", bridgePromise);
         PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
         byte[] decodedBody = body == null ? null : body.getBytes(StandardCharsets.UTF_8);
-        PowerAuthAuthorizationHttpHeader header = this.powerAuth.requestSignatureWithAuthentication(this.context, auth, method, uriId, decodedBody);
+        PowerAuthAuthorizationHttpHeader header = getPowerAuth().requestSignatureWithAuthentication(this.context, auth, method, uriId, decodedBody);
+        if (header.powerAuthErrorCode == PowerAuthErrorCodes.PA2Succeed) {
+            WritableMap returnMap = Arguments.createMap();
+            returnMap.putString("key", header.key);
+            returnMap.putString("value", header.value);
+            promise.resolve(returnMap);
+        } else {
+            ErrorTable.reject(promise, header.powerAuthErrorCode, "Signature failed.");
+        }
+    }
+
+    @ReactMethod
+    public void beginSignature(ReadableMap authMap, String method, String uriId, int bodySize, Promise bridgePromise) {
+        final Promise promise = trace.begin("beginSignature", bridgePromise);
+        removeExpiredSignatureSessions();
+        if (signatureSessions.size() >= MAX_SIGNATURE_SESSIONS) {
+            ErrorTable.reject(promise, "PA2ReactNativeError", "Too many signature sessions.");
+            return;
+        }
+        if (bodySize > SignatureSession.MAX_BODY_SIZE) {
+            ErrorTable.reject(promise, "PA2ReactNativeError", "Body is too large.");
+            return;
+        }
+        PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
+        String sessionId = UUID.randomUUID().toString();
+        signatureSessions.put(sessionId, new SignatureSession(auth, method, uriId, bodySize));
+        promise.resolve(sessionId);
+    }
+
+    @ReactMethod
+    public void appendBody(String sessionId, String chunk, Promise bridgePromise) {
+        final Promise promise = trace.begin("appendBody", bridgePromise);
+        SignatureSession session = getSignatureSession(sessionId);
+        if (session == null) {
+            ErrorTable.reject(promise, "PA2ReactNativeError", "Invalid signature session.");
+            return;
+        }
+        try {
+            session.appendText(chunk);
+            promise.resolve(null);
+        } catch (Exception e) {
+            signatureSessions.remove(sessionId);
+            ErrorTable.reject(promise, "PA2ReactNativeError", "Failed to append body.", e);
+        }
+    }
+
+    @ReactMethod
+    public void appendBodyFromFile(String sessionId, String fileUri, Promise bridgePromise) {
+        final Promise promise = trace.begin("appendBodyFromFile", bridgePromise);
+        SignatureSession session = getSignatureSession(sessionId);
+        if (session == null) {
+            ErrorTable.reject(promise, "PA2ReactNativeError", "Invalid signature session.");
+            return;
+        }
+        try {
+            session.appendFile(this.context, fileUri);
+            promise.resolve(null);
+        } catch (Exception e) {
+            signatureSessions.remove(sessionId);
+            ErrorTable.reject(promise, "PA2ReactNativeError", "Failed to read body from file.", e);
+        }
+    }
+
+    @ReactMethod
+    public void finishSignature(String sessionId, Promise bridgePromise) {
+        final Promise promise = trace.begin("finishSignature", bridgePromise);
+        SignatureSession session = signatureSessions.remove(sessionId);
+        if (session == null || session.isExpired(SystemClock.elapsedRealtime())) {
+            ErrorTable.reject(promise, "PA2ReactNativeError", "Invalid signature session.");
+            return;
+        }
+        PowerAuthAuthorizationHttpHeader header = getPowerAuth().requestSignatureWithAuthentication(this.context, session.authentication, session.method, session.uriId, session.getBody());
         if (header.powerAuthErrorCode == PowerAuthErrorCodes.PA2Succeed) {
             WritableMap returnMap = Arguments.createMap();
             returnMap.putString("key", header.key);
             returnMap.putString("value", header.value);
             promise.resolve(returnMap);
         } else {
-            promise.reject(PowerAuthRNModule.getErrorCodeFromError(header.powerAuthErrorCode), "Signature failed.");
+            ErrorTable.reject(promise, header.powerAuthErrorCode, "Signature failed.");
+        }
+    }
+
+    @ReactMethod
+    public void cancelSignature(String sessionId) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        signatureSessions.remove(sessionId);
+        trace.record("cancelSignature", start);
+    }
+
+    /**
+     * @return session that is not expired, or null
+     */
+    @Nullable
+    private SignatureSession getSignatureSession(String sessionId) {
+        SignatureSession session = signatureSessions.get(sessionId);
+        if (session == null) {
+            return null;
+        }
+        if (session.isExpired(SystemClock.elapsedRealtime())) {
+            signatureSessions.remove(sessionId);
+            return null;
+        }
+        session.touch();
+        return session;
+    }
+
+    private void removeExpiredSignatureSessions() {
+        long now = SystemClock.elapsedRealtime();
+        Iterator<SignatureSession> iterator = signatureSessions.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+            }
         }
     }
 
     @ReactMethod
-    public void offlineSignature(ReadableMap authMap, String uriId, @Nullable String body, String nonce, Promise promise) {
+    public void offlineSignature(ReadableMap authMap, String uriId, @Nullable String body, String nonce, Promise bridgePromise) {
+        final Promise promise = trace.begin("offlineSignature", bridgePromise);
         PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
         byte[] decodedBody = body == null ? null : body.getBytes(StandardCharsets.UTF_8);
-        String signature = this.powerAuth.offlineSignatureWithAuthentication(this.context, auth, uriId, decodedBody, nonce);
+        String signature = getPowerAuth().offlineSignatureWithAuthentication(this.context, auth, uriId, decodedBody, nonce);
         if (signature != null) {
             promise.resolve(signature);
         } else {
-            promise.reject("PA2ReactNativeError", "Signature failed");
+            ErrorTable.reject(promise, "PA2ReactNativeError", "Signature failed");
         }
     }
 
     @ReactMethod
-    public void verifyServerSignedData(String data, String signature, boolean masterKey, Promise promise) {
+    public void verifyServerSignedData(String data, String signature, boolean masterKey, Promise bridgePromise) {
+        final Promise promise = trace.begin("verifyServerSignedData", bridgePromise);
         try {
             byte[] decodedData = data.getBytes(StandardCharsets.UTF_8);
             byte[] decodedSignature = Base64.decode(signature, Base64.DEFAULT);
-            promise.resolve(this.powerAuth.verifyServerSignedData(decodedData, decodedSignature, masterKey));
+            promise.resolve(getPowerAuth().verifyServerSignedData(decodedData, decodedSignature, masterKey));
         } catch (Exception e) {
-            promise.reject("PA2ReactNativeError", "Verify failed");
+            ErrorTable.reject(promise, "PA2ReactNativeError", "Verify failed");
         }
     }
 
     @ReactMethod
-    public void unsafeChangePassword(String oldPassword, String newPassword, Promise promise) {
-        promise.resolve(this.powerAuth.changePasswordUnsafe(oldPassword, newPassword));
+    public void unsafeChangePassword(String oldPassword, String newPassword, Promise bridgePromise) {
+        final Promise promise = trace.begin("unsafeChangePassword", bridgePromise);
+        promise.resolve(getPowerAuth().changePasswordUnsafe(oldPassword, newPassword));
     }
 
     @ReactMethod
-    public void changePassword(String oldPassword, String newPassword, final Promise promise) {
-        this.powerAuth.changePassword(this.context, oldPassword, newPassword, new IChangePasswordListener() {
+    public void changePassword(final String oldPassword, final String newPassword, Promise bridgePromise) {
+        final Promise promise = trace.begin("changePassword", bridgePromise);
+        AdmissionPolicy.changePassword(admission, oldPassword, newPassword, promise, new AdmissionController.Operation() {
             @Override
-            public void onPasswordChangeSucceed() {
-                promise.resolve(null);
-            }
+            public void start(@NonNull final Promise promise) {
+                getPowerAuth().changePassword(context, oldPassword, newPassword, new IChangePasswordListener() {
+                    @Override
+                    public void onPasswordChangeSucceed() {
+                        promise.resolve(null);
+                    }
 
-            @Override
-            public void onPasswordChangeFailed(Throwable t) {
-                promise.reject(PowerAuthRNModule.getErrorCodeFromThrowable(t) ,t);
+                    @Override
+                    public void onPasswordChangeFailed(Throwable t) {
+                        ErrorTable.reject(promise, t);
+                    }
+                });
             }
         });
     }
 
     @ReactMethod
-    public void addBiometryFactor(String password, String title, String description, final Promise promise) {
+    public void addBiometryFactor(String password, String title, String description, Promise bridgePromise) {
+        final Promise promise = trace.begin("addBiometryFactor", bridgePromise);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             try {
-                this.powerAuth.addBiometryFactor(
+                getPowerAuth().addBiometryFactor(
                         this.context,
                         ((FragmentActivity)getCurrentActivity()).getSupportFragmentManager(),
                         title,
@@ -372,132 +559,199 @@ public class PowerAuthRNModule extends ReactContextBaseJavaModule {
                         new IAddBiometryFactorListener() {
                             @Override
                             public void onAddBiometryFactorSucceed() {
+                                biometryCache.invalidate();
                                 promise.resolve(null);
                             }
 
                             @Override
                             public void onAddBiometryFactorFailed(@NonNull PowerAuthErrorException error) {
-                                promise.reject(PowerAuthRNModule.getErrorCodeFromThrowable(error), error);
+                                biometryCache.invalidate();
+                                ErrorTable.reject(promise, error);
                             }
                         });
             } catch (Exception e) {
-                promise.reject(PowerAuthRNModule.getErrorCodeFromThrowable(e) ,e);
+                ErrorTable.reject(promise, e);
             }
         } else {
-            promise.reject("PA2ReactNativeError", "Biometry not supported on this android version.");
+            ErrorTable.reject(promise, "PA2ReactNativeError", "Biometry not supported on this android version.");
         }
     }
 
     @ReactMethod
-    public void hasBiometryFactor(Promise promise) {
+    public void hasBiometryFactor(Promise bridgePromise) {
+        final Promise promise = trace.begin("hasBiometryFactor", bridgePromise);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            promise.resolve(this.powerAuth.hasBiometryFactor(this.context));
+            promise.resolve(biometryCache.hasBiometryFactor(getPowerAuth()));
         } else {
-            promise.reject("PA2ReactNativeError", "Biometry not supported on this android version.");
+            ErrorTable.reject(promise, "PA2ReactNativeError", "Biometry not supported on this android version.");
         }
     }
 
     @ReactMethod
-    public void removeBiometryFactor(Promise promise) {
+    public void removeBiometryFactor(Promise bridgePromise) {
+        final Promise promise = trace.begin("removeBiometryFactor", bridgePromise);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            promise.resolve(this.powerAuth.removeBiometryFactor(this.context));
+            boolean result = getPowerAuth().removeBiometryFactor(this.context);
+            biometryCache.invalidate();
+            promise.resolve(result);
         } else {
-            promise.reject("PA2ReactNativeError", "Biometry not supported on this android version.");
+            ErrorTable.reject(promise, "PA2ReactNativeError", "Biometry not supported on this android version.");
         }
     }
 
     @ReactMethod
-    public void fetchEncryptionKey(ReadableMap authMap, int index, final Promise promise) {
-        PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
-        this.powerAuth.fetchEncryptionKey(this.context, auth, index, new IFetchEncryptionKeyListener() {
-            @Override
-            public void onFetchEncryptionKeySucceed(byte[] encryptedEncryptionKey) {
-                promise.resolve(Base64.encodeToString(encryptedEncryptionKey, Base64.DEFAULT));
-            }
+    public void isBiometryAvailable(Promise bridgePromise) {
+        final Promise promise = trace.begin("isBiometryAvailable", bridgePromise);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            promise.resolve(biometryCache.isBiometryAvailable());
+        } else {
+            promise.resolve(false);
+        }
+    }
 
+    @ReactMethod
+    public void fetchEncryptionKey(ReadableMap authMap, final int index, Promise bridgePromise) {
+        final Promise promise = trace.begin("fetchEncryptionKey", bridgePromise);
+        final PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
+        AdmissionPolicy.interactive(admission, promise, new AdmissionController.Operation() {
             @Override
-            public void onFetchEncryptionKeyFailed(Throwable t) {
-                promise.reject(PowerAuthRNModule.getErrorCodeFromThrowable(t) ,t);
+            public void start(@NonNull final Promise promise) {
+                getPowerAuth().fetchEncryptionKey(context, auth, index, new IFetchEncryptionKeyListener() {
+                    @Override
+                    public void onFetchEncryptionKeySucceed(byte[] encryptedEncryptionKey) {
+                        promise.resolve(Base64.encodeToString(encryptedEncryptionKey, Base64.DEFAULT));
+                    }
+
+                    @Override
+                    public void onFetchEncryptionKeyFailed(Throwable t) {
+                        ErrorTable.reject(promise, t);
+                    }
+                });
             }
         });
     }
 
     @ReactMethod
-    public void signDataWithDevicePrivateKey(ReadableMap authMap, String data, final Promise promise) {
-        PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
-        powerAuth.signDataWithDevicePrivateKey(this.context, auth, data.getBytes(StandardCharsets.UTF_8), new IDataSignatureListener() {
+    public void signDataWithDevicePrivateKey(ReadableMap authMap, final String data, Promise bridgePromise) {
+        final Promise promise = trace.begin("signDataWithDevicePrivateKey", bridgePromise);
+        final PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
+        AdmissionPolicy.interactive(admission, promise, new AdmissionController.Operation() {
             @Override
-            public void onDataSignedSucceed(byte[] signature) {
-                promise.resolve(Base64.encodeToString(signature, Base64.DEFAULT));
-            }
+            public void start(@NonNull final Promise promise) {
+                getPowerAuth().signDataWithDevicePrivateKey(context, auth, data.getBytes(StandardCharsets.UTF_8), new IDataSignatureListener() {
+                    @Override
+                    public void onDataSignedSucceed(byte[] signature) {
+                        promise.resolve(Base64.encodeToString(signature, Base64.DEFAULT));
+                    }
 
-            @Override
-            public void onDataSignedFailed(Throwable t) {
-                promise.reject(PowerAuthRNModule.getErrorCodeFromThrowable(t) ,t);
+                    @Override
+                    public void onDataSignedFailed(Throwable t) {
+                        ErrorTable.reject(promise, t);
+                    }
+                });
             }
         });
     }
 
     @ReactMethod
-    public void validatePassword(String password, final Promise promise) {
-        this.powerAuth.validatePasswordCorrect(this.context, password, new IValidatePasswordListener() {
+    public void validatePassword(final String password, Promise bridgePromise) {
+        final Promise promise = trace.begin("validatePassword", bridgePromise);
+        AdmissionPolicy.validatePassword(admission, password, promise, new AdmissionController.Operation() {
             @Override
-            public void onPasswordValid() {
-                promise.resolve(null);
-            }
+            public void start(@NonNull final Promise promise) {
+                getPowerAuth().validatePasswordCorrect(context, password, new IValidatePasswordListener() {
+                    @Override
+                    public void onPasswordValid() {
+                        promise.resolve(null);
+                    }
 
-            @Override
-            public void onPasswordValidationFailed(Throwable t) {
-                promise.reject(PowerAuthRNModule.getErrorCodeFromThrowable(t) ,t);
+                    @Override
+                    public void onPasswordValidationFailed(Throwable t) {
+                        ErrorTable.reject(promise, t);
+                    }
+                });
             }
         });
     }
 
     @ReactMethod
-    public void hasActivationRecoveryData(Promise promise) {
-        promise.resolve(this.powerAuth.hasActivationRecoveryData());
+    public void hasActivationRecoveryData(Promise bridgePromise) {
+        final Promise promise = trace.begin("hasActivationRecoveryData", bridgePromise);
+        promise.resolve(getPowerAuth().hasActivationRecoveryData());
     }
 
     @ReactMethod
-    public void activationRecoveryData(ReadableMap authMap, final Promise promise) {
-        PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
-        this.powerAuth.getActivationRecoveryData(this.context, auth, new IGetRecoveryDataListener() {
+    public void activationRecoveryData(ReadableMap authMap, Promise bridgePromise) {
+        final Promise promise = trace.begin("activationRecoveryData", bridgePromise);
+        final PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
+        AdmissionPolicy.activationRecoveryData(admission, auth, promise, new AdmissionController.Operation() {
             @Override
-            public void onGetRecoveryDataSucceeded(@NonNull RecoveryData recoveryData) {
-                WritableMap map = Arguments.createMap();
-                map.putString("recoveryCode", recoveryData.recoveryCode);
-                map.putString("puk", recoveryData.puk);
-                promise.resolve(map);
-            }
+            public void start(@NonNull final Promise promise) {
+                getPowerAuth().getActivationRecoveryData(context, auth, new IGetRecoveryDataListener() {
+                    @Override
+                    public void onGetRecoveryDataSucceeded(@NonNull RecoveryData recoveryData) {
+                        WritableMap map = Arguments.createMap();
+                        map.putString("recoveryCode", recoveryData.recoveryCode);
+                        map.putString("puk", recoveryData.puk);
+                        promise.resolve(map);
+                    }
 
-            @Override
-            public void onGetRecoveryDataFailed(@NonNull Throwable t) {
-                promise.reject(PowerAuthRNModule.getErrorCodeFromThrowable(t) ,t);
+                    @Override
+                    public void onGetRecoveryDataFailed(@NonNull Throwable t) {
+                        ErrorTable.reject(promise, t);
+                    }
+                });
             }
         });
     }
 
     @ReactMethod
-    public void confirmRecoveryCode(String recoveryCode, ReadableMap authMap, final Promise promise) {
-        PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
-        this.powerAuth.confirmRecoveryCode(this.context, auth, recoveryCode, new IConfirmRecoveryCodeListener() {
+    public void confirmRecoveryCode(final String recoveryCode, ReadableMap authMap, Promise bridgePromise) {
+        final Promise promise = trace.begin("confirmRecoveryCode", bridgePromise);
+        final PowerAuthAuthentication auth = PowerAuthRNModule.constructAuthentication(authMap);
+        AdmissionPolicy.interactive(admission, promise, new AdmissionController.Operation() {
             @Override
-            public void onRecoveryCodeConfirmed(boolean alreadyConfirmed) {
-                promise.resolve(null);
-            }
+            public void start(@NonNull final Promise promise) {
+                getPowerAuth().confirmRecoveryCode(context, auth, recoveryCode, new IConfirmRecoveryCodeListener() {
+                    @Override
+                    public void onRecoveryCodeConfirmed(boolean alreadyConfirmed) {
+                        promise.resolve(null);
+                    }
 
-            @Override
-            public void onRecoveryCodeConfirmFailed(@NonNull Throwable t) {
-                promise.reject(PowerAuthRNModule.getErrorCodeFromThrowable(t) ,t);
+                    @Override
+                    public void onRecoveryCodeConfirmFailed(@NonNull Throwable t) {
+                        ErrorTable.reject(promise, t);
+                    }
+                });
             }
         });
     }
 
     @ReactMethod
-    public void authenticateWithBiometry(String title, String description, final Promise promise) {
+    public void operationQueueStats(Promise bridgePromise) {
+        final Promise promise = trace.begin("operationQueueStats", bridgePromise);
+        WritableMap map = Arguments.createMap();
+        map.putInt("maxConcurrentOperations", admission.getMaxConcurrentOperations());
+        map.putInt("inFlight", admission.getInFlightCount());
+        map.putInt("queued", admission.getQueuedCount());
+        map.putDouble("admitted", admission.getAdmittedCount());
+        map.putDouble("coalesced", admission.getCoalescedCount());
+        map.putDouble("averageWaitMs", admission.getAverageWaitMillis());
+        map.putDouble("maxWaitMs", admission.getMaxWaitMillis());
+        promise.resolve(map);
+    }
+
+    @ReactMethod
+    public void exportTrace(Promise promise) {
+        promise.resolve(trace.exportJson());
+    }
+
+    @ReactMethod
+    public void authenticateWithBiometry(String title, String description, Promise bridgePromise) {
+        final Promise promise = trace.begin("authenticateWithBiometry", bridgePromise);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             try {
-                this.powerAuth.authenticateUsingBiometry(
+                getPowerAuth().authenticateUsingBiometry(
                         this.context,
                         ((FragmentActivity) getCurrentActivity()).getSupportFragmentManager(),
                         title,
@@ -505,7 +759,7 @@ public class PowerAuthRNModule extends ReactContextBaseJavaModule {
                         new IBiometricAuthenticationCallback() {
                             @Override
                             public void onBiometricDialogCancelled(boolean userCancel) {
-                                promise.reject("PA2ReactNativeError_BiometryCanceled", "Biometry dialog was canceled");
+                                ErrorTable.reject(promise, "PA2ReactNativeError_BiometryCanceled", "Biometry dialog was canceled");
                             }
 
                             @Override
@@ -516,20 +770,21 @@ public class PowerAuthRNModule extends ReactContextBaseJavaModule {
 
                             @Override
                             public void onBiometricDialogFailed(@NonNull PowerAuthErrorException error) {
-                                promise.reject("PA2ReactNativeError_BiometryFailed", "Biometry dialog failed");
+                                ErrorTable.reject(promise, "PA2ReactNativeError_BiometryFailed", "Biometry dialog failed");
                             }
                         }
                 );
             } catch (Exception e) {
-                promise.reject(PowerAuthRNModule.getErrorCodeFromThrowable(e) ,e);
+                ErrorTable.reject(promise, e);
             }
         } else {
-            promise.reject("PA2ReactNativeError", "Biometry not supported on this android version.");
+            ErrorTable.reject(promise, "PA2ReactNativeError", "Biometry not supported on this android version.");
         }
     }
 
     @ReactMethod
-    public void parseActivationCode(String activationCode, Promise promise) {
+    public void parseActivationCode(String activationCode, Promise bridgePromise) {
+        final Promise promise = trace.begin("parseActivationCode", bridgePromise);
         Otp otp = OtpUtil.parseFromActivationCode(activationCode);
         if (otp != null) {
             WritableMap response = Arguments.createMap();
@@ -537,17 +792,19 @@ public class PowerAuthRNModule extends ReactContextBaseJavaModule {
             response.putString("activationSignature", otp.activationSignature);
             promise.resolve(response);
         } else {
-            promise.reject("PA2RNInvalidActivationCode", "Invalid activation code.");
+            ErrorTable.reject(promise, "PA2RNInvalidActivationCode", "Invalid activation code.");
         }
     }
 
     @ReactMethod
-    public void validateActivationCode(String activationCode, Promise promise) {
+    public void validateActivationCode(String activationCode, Promise bridgePromise) {
+        final Promise promise = trace.begin("validateActivationCode", bridgePromise);
         promise.resolve(OtpUtil.validateActivationCode(activationCode));
     }
 
     @ReactMethod
-    public void parseRecoveryCode(String recoveryCode, Promise promise) {
+    public void parseRecoveryCode(String recoveryCode, Promise bridgePromise) {
+        final Promise promise = trace.begin("parseRecoveryCode", bridgePromise);
         Otp otp = OtpUtil.parseFromRecoveryCode(recoveryCode);
         if (otp != null) {
             WritableMap response = Arguments.createMap();
@@ -555,30 +812,34 @@ public class PowerAuthRNModule extends ReactContextBaseJavaModule {
             response.putString("activationSignature", otp.activationSignature);
             promise.resolve(response);
         } else {
-            promise.reject("PA2RNInvalidRecoveryCode", "Invalid recovery code.");
+            ErrorTable.reject(promise, "PA2RNInvalidRecoveryCode", "Invalid recovery code.");
         }
     }
 
     @ReactMethod
-    public void validateRecoveryCode(String recoveryCode, Promise promise) {
+    public void validateRecoveryCode(String recoveryCode, Promise bridgePromise) {
+        final Promise promise = trace.begin("validateRecoveryCode", bridgePromise);
         promise.resolve(OtpUtil.validateRecoveryCode(recoveryCode));
     }
 
     @ReactMethod
-    public void validateRecoveryPuk(String puk, Promise promise) {
+    public void validateRecoveryPuk(String puk, Promise bridgePromise) {
+        final Promise promise = trace.begin("validateRecoveryPuk", bridgePromise);
         promise.resolve(OtpUtil.validateRecoveryPuk(puk));
     }
 
     @ReactMethod
-    public void validateTypedCharacter(int character, Promise promise) {
+    public void validateTypedCharacter(int character, Promise bridgePromise) {
+        final Promise promise = trace.begin("validateTypedCharacter", bridgePromise);
         promise.resolve(OtpUtil.validateTypedCharacter(character));
     }
 
     @ReactMethod
-    public void correctTypedCharacter(int character, Promise promise) {
+    public void correctTypedCharacter(int character, Promise bridgePromise) {
+        final Promise promise = trace.begin("correctTypedCharacter", bridgePromise);
         int corrected = OtpUtil.validateAndCorrectTypedCharacter(character);
         if (corrected == 0) {
-            promise.reject("PA2RNInvalidCharacter", "Invalid character cannot be corrected.");
+            ErrorTable.reject(promise, "PA2RNInvalidCharacter", "Invalid character cannot be corrected.");
         } else {
             promise.resolve(corrected);
         }
@@ -617,38 +878,4 @@ public class PowerAuthRNModule extends ReactContextBaseJavaModule {
         auth.usePassword = map.getString("userPassword");
         return auth;
     }
-
-    static String getErrorCodeFromThrowable(Throwable t) {
-
-        PowerAuthErrorException paEx = (t instanceof PowerAuthErrorException ? (PowerAuthErrorException)t : null);
-        if (paEx == null) {
-            return "PA2ReactNativeError";
-        }
-
-        return getErrorCodeFromError(paEx.getPowerAuthErrorCode());
-    }
-
-    static String getErrorCodeFromError(int error) {
-        switch (error) {
-            case PowerAuthErrorCodes.PA2Succeed: return "PA2Succeed";
-            case PowerAuthErrorCodes.PA2ErrorCodeNetworkError: return "PA2ErrorCodeNetworkError";
-            case PowerAuthErrorCodes.PA2ErrorCodeSignatureError: return "PA2ErrorCodeSignatureError";
-            case PowerAuthErrorCodes.PA2ErrorCodeInvalidActivationState: return "PA2ErrorCodeInvalidActivationState";
-            case PowerAuthErrorCodes.PA2ErrorCodeInvalidActivationData: return "PA2ErrorCodeInvalidActivationData";
-            case PowerAuthErrorCodes.PA2ErrorCodeMissingActivation: return "PA2ErrorCodeMissingActivation";
-            case PowerAuthErrorCodes.PA2ErrorCodeActivationPending: return "PA2ErrorCodeActivationPending";
-            case PowerAuthErrorCodes.PA2ErrorCodeBiometryCancel: return "PA2ErrorCodeBiometryCancel";
-            case PowerAuthErrorCodes.PA2ErrorCodeOperationCancelled: return "PA2ErrorCodeOperationCancelled";
-            case PowerAuthErrorCodes.PA2ErrorCodeInvalidActivationCode: return "PA2ErrorCodeInvalidActivationCode";
-            case PowerAuthErrorCodes.PA2ErrorCodeInvalidToken: return "PA2ErrorCodeInvalidToken";
-            case PowerAuthErrorCodes.PA2ErrorCodeEncryptionError: return "PA2ErrorCodeEncryption"; // different string to be consistent with iOS where this case is named differently
-            case PowerAuthErrorCodes.PA2ErrorCodeWrongParameter: return "PA2ErrorCodeWrongParameter";
-            case PowerAuthErrorCodes.PA2ErrorCodeProtocolUpgrade: return "PA2ErrorCodeProtocolUpgrade";
-            case PowerAuthErrorCodes.PA2ErrorCodePendingProtocolUpgrade: return "PA2ErrorCodePendingProtocolUpgrade";
-            case PowerAuthErrorCodes.PA2ErrorCodeBiometryNotSupported: return "PA2ErrorCodeBiometryNotSupported";
-            case PowerAuthErrorCodes.PA2ErrorCodeBiometryNotAvailable: return "PA2ErrorCodeBiometryNotAvailable";
-            case PowerAuthErrorCodes.PA2ErrorCodeBiometryNotRecognized: return "PA2ErrorCodeBiometryNotRecognized";
-            default: return String.format("PA2UnknownCode%d", error);
-        }
-    }
-}
\ No newline at end of file
+}
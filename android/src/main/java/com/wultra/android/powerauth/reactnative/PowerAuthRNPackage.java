@@ -16,45 +16,85 @@
 
 package com.wultra.android.powerauth.reactnative;
 
-import android.util.Log;
+import android.content.Context;
+import android.os.Trace;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import com.facebook.react.ReactPackage;
+import com.facebook.react.TurboReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 import com.facebook.react.uimanager.ViewManager;
 
-import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import io.getlime.security.powerauth.sdk.PowerAuthSDK;
+import io.getlime.security.powerauth.sdk.impl.ISavePowerAuthStateListener;
 
-public class PowerAuthRNPackage implements ReactPackage {
+/**
+ * React Native package with the PowerAuth module.
+ * <p>
+ * The module is created lazily, when Javascript accesses it for the first time, so the PowerAuth
+ * SDK classes are not loaded during the application startup. The PowerAuth instance is owned by
+ * the package, not by the module. Configuration passed to the package is kept until a context is
+ * available, from the module or from {@link #getNativeApi(Context)}, and the instance is then
+ * shared by all modules created for the rebuilt React contexts and by the native API.
+ */
+public class PowerAuthRNPackage extends TurboReactPackage {
 
-    private PowerAuthRNModule mPowerAuthModule;
-    private PowerAuthSDK.Builder mConfig;
+    private final SharedPowerAuth mShared = new SharedPowerAuth();
+    private PowerAuthNativeApi mNativeApi;
 
     @Override
     public List<ViewManager> createViewManagers(@NonNull ReactApplicationContext reactContext) {
         return Collections.emptyList();
     }
 
+    @Nullable
+    @Override
+    public NativeModule getModule(String name, @NonNull ReactApplicationContext reactContext) {
+        if (PowerAuthRNModule.NAME.equals(name)) {
+            return createModule(reactContext);
+        }
+        return null;
+    }
+
     @Override
-    public List<NativeModule> createNativeModules(@NonNull ReactApplicationContext reactContext) {
-        List<NativeModule> modules = new ArrayList<>();
-        mPowerAuthModule = new PowerAuthRNModule(reactContext);
-        if (mConfig != null) {
-            try {
-                mPowerAuthModule.configure(mConfig);
-            } catch (Exception e) {
-                Log.e("PA-RN", "PowerAuth module failed to configure.", e);
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        // Don't touch the module class here, it would load the PowerAuth SDK.
+        return new ReactModuleInfoProvider() {
+            @Override
+            public Map<String, ReactModuleInfo> getReactModuleInfos() {
+                Map<String, ReactModuleInfo> infos = new HashMap<>();
+                infos.put(PowerAuthRNModule.NAME, new ReactModuleInfo(
+                        PowerAuthRNModule.NAME,
+                        "com.wultra.android.powerauth.reactnative.PowerAuthRNModule",
+                        false,  // canOverrideExistingModule
+                        false,  // needsEagerInit
+                        false,  // hasConstants
+                        false,  // isCxxModule
+                        false   // isTurboModule
+                ));
+                return infos;
             }
-            mConfig = null;
+        };
+    }
+
+    private PowerAuthRNModule createModule(@NonNull ReactApplicationContext reactContext) {
+        // Covers loading of the module and PowerAuth SDK classes, which the lazy creation keeps
+        // out of the application startup. Visible in systrace and Perfetto traces.
+        Trace.beginSection("PowerAuthRNModule.create");
+        try {
+            return new PowerAuthRNModule(reactContext, mShared);
+        } finally {
+            Trace.endSection();
         }
-        modules.add(mPowerAuthModule);
-        return modules;
     }
 
     /**
@@ -64,13 +104,38 @@ public class PowerAuthRNPackage implements ReactPackage {
      * @throws IllegalStateException When the module was already configured.
      */
     public void configure(@NonNull PowerAuthSDK.Builder builder) throws IllegalStateException, IllegalArgumentException {
+        mShared.configure(builder);
+    }
 
-        if (mPowerAuthModule != null) {
-            // Module was already created, configure it right away.
-            mPowerAuthModule.configure(builder);
-        } else {
-            // Keep the config until the module is created
-            mConfig = builder;
+    /**
+     * Sets the storage for the PowerAuth activation state. The storage is used by both, native
+     * and Javascript configuration, and replaces the storage set in the configured builder.
+     * If not set, the default storage of the PowerAuth SDK is used.
+     *
+     * @param storage storage for the activation state, for example {@link MappedFileStateStorage}
+     * @throws IllegalStateException When the module was already configured.
+     */
+    public void setStateStorage(@Nullable ISavePowerAuthStateListener storage) throws IllegalStateException {
+        mShared.setStateStorage(storage);
+    }
+
+    /**
+     * Returns the Java API for the native parts of the application. The API uses the same
+     * PowerAuth instance as Javascript, so don't create another {@link PowerAuthSDK} with
+     * the same instance ID.
+     * <p>
+     * The API doesn't need the Javascript module. When the package was configured with
+     * {@link #configure(PowerAuthSDK.Builder)}, the instance is built here if it doesn't exist yet.
+     *
+     * @param context any context, used to build the PowerAuth instance
+     * @return Java API working with the shared PowerAuth instance
+     */
+    @NonNull
+    public synchronized PowerAuthNativeApi getNativeApi(@NonNull Context context) {
+        mShared.attachContext(context);
+        if (mNativeApi == null) {
+            mNativeApi = new PowerAuthNativeApi(mShared);
         }
+        return mNativeApi;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableMap;
+
+import io.getlime.security.powerauth.core.ActivationStatus;
+import io.getlime.security.powerauth.exception.PowerAuthErrorException;
+import io.getlime.security.powerauth.networking.response.IActivationStatusListener;
+import io.getlime.security.powerauth.sdk.PowerAuthSDK;
+import io.getlime.security.powerauth.sdk.impl.ISavePowerAuthStateListener;
+
+/**
+ * PowerAuth instance owned by {@link PowerAuthRNPackage}, shared by the Javascript module and
+ * {@link PowerAuthNativeApi}.
+ * <p>
+ * The instance outlives the module, which is created again whenever the React context is
+ * rebuilt, so native callers don't depend on Javascript touching the module first. A builder
+ * passed before any context is known is kept and built as soon as the module or the native API
+ * provides one. The operation limit, the operation trace and the biometry cache are shared
+ * the same way, so a change made through one of them is seen by the other.
+ */
+class SharedPowerAuth {
+
+    private final AdmissionController admission = new AdmissionController(AdmissionController.DEFAULT_MAX_CONCURRENT_OPERATIONS);
+    private final OperationTrace trace = new OperationTrace(OperationTrace.DEFAULT_CAPACITY);
+
+    private Context context;
+    private volatile BiometryCapabilityCache biometryCache;
+    private PowerAuthSDK.Builder pendingConfig;
+    private ISavePowerAuthStateListener stateStorage;
+    private String jsInstanceId;
+    private volatile PowerAuthSDK powerAuth;
+
+    /**
+     * Provides the context for building the instance. Builds the pending configuration, if any.
+     * A configuration that fails to build is logged and dropped, like when the package applied
+     * it to the module.
+     *
+     * @param context any context, only the application context is kept
+     */
+    synchronized void attachContext(@NonNull Context context) {
+        if (this.context == null) {
+            this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+            biometryCache = new BiometryCapabilityCache(this.context);
+        }
+        if (pendingConfig != null) {
+            PowerAuthSDK.Builder builder = pendingConfig;
+            pendingConfig = null;
+            try {
+                build(builder);
+            } catch (Exception e) {
+                Log.e("PA-RN", "PowerAuth module failed to configure.", e);
+            }
+        }
+    }
+
+    /**
+     * Configures the instance from the native code. The instance is built right away when
+     * a context is known, otherwise when it's attached.
+     *
+     * @param builder configuration for the PowerAuth instance
+     * @throws IllegalStateException When the instance was already configured.
+     * @throws IllegalArgumentException When the configuration is not valid.
+     */
+    synchronized void configure(@NonNull PowerAuthSDK.Builder builder) throws IllegalStateException, IllegalArgumentException {
+        if (powerAuth != null || pendingConfig != null) {
+            throw new IllegalStateException("PowerAuth module was already configured.");
+        }
+        if (context == null) {
+            pendingConfig = builder;
+        } else {
+            build(builder);
+        }
+    }
+
+    /**
+     * Configures the instance from Javascript. Javascript configures the module again after every
+     * reload, so an instance it configured before with the same instance ID is reused.
+     *
+     * @param instanceId instance ID from the configuration
+     * @param builder configuration for the PowerAuth instance
+     * @throws IllegalStateException When the instance was already configured differently.
+     * @throws IllegalArgumentException When the configuration is not valid.
+     */
+    synchronized void configureFromJs(@NonNull String instanceId, @NonNull PowerAuthSDK.Builder builder) throws IllegalStateException, IllegalArgumentException {
+        if (powerAuth != null && instanceId.equals(jsInstanceId)) {
+            return;
+        }
+        configure(builder);
+        jsInstanceId = instanceId;
+    }
+
+    /**
+     * Sets the storage for the activation state, used by the instance when it's built.
+     *
+     * @param storage storage for the activation state, or null for the default one
+     * @throws IllegalStateException When the instance was already built.
+     */
+    synchronized void setStateStorage(@Nullable ISavePowerAuthStateListener storage) throws IllegalStateException {
+        if (powerAuth != null) {
+            throw new IllegalStateException("PowerAuth module was already configured.");
+        }
+        stateStorage = storage;
+    }
+
+    @Nullable
+    synchronized ISavePowerAuthStateListener getStateStorage() {
+        return stateStorage;
+    }
+
+    private void build(@NonNull PowerAuthSDK.Builder builder) throws IllegalArgumentException {
+        if (stateStorage != null) {
+            builder.stateListener(stateStorage);
+        }
+        try {
+            powerAuth = builder.build(context);
+        } catch (PowerAuthErrorException e) {
+            throw new IllegalArgumentException("Unable to configure with provided data", e);
+        }
+    }
+
+    /**
+     * @return the PowerAuth instance, or null when it's not configured yet
+     */
+    @Nullable
+    PowerAuthSDK getPowerAuth() {
+        return powerAuth;
+    }
+
+    /**
+     * @return application context, or null when no context was attached yet
+     */
+    @Nullable
+    synchronized Context getContext() {
+        return context;
+    }
+
+    /**
+     * @return biometry cache, or null when no context was attached yet
+     */
+    @Nullable
+    BiometryCapabilityCache getBiometryCache() {
+        return biometryCache;
+    }
+
+    /**
+     * Forgets the cached biometry state, if there's any.
+     */
+    void invalidateBiometryCache() {
+        BiometryCapabilityCache cache = biometryCache;
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    @NonNull
+    AdmissionController getAdmission() {
+        return admission;
+    }
+
+    @NonNull
+    OperationTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Refreshes the activation status, which also finishes a pending protocol upgrade. The status
+     * request is merged with the one from Javascript, if any.
+     *
+     * @param promise promise settled when the maintenance is done
+     */
+    void runMaintenance(@NonNull Promise promise) {
+        promise = trace.begin("maintenance", promise);
+        PowerAuthSDK powerAuth = getPowerAuth();
+        if (powerAuth == null || !powerAuth.hasValidActivation()) {
+            promise.resolve(null);
+            return;
+        }
+        AdmissionPolicy.fetchActivationStatus(admission, promise, fetchActivationStatusOperation());
+    }
+
+    /**
+     * @return operation fetching the activation status, resolved with the status map for Javascript
+     */
+    @NonNull
+    AdmissionController.Operation fetchActivationStatusOperation() {
+        return new AdmissionController.Operation() {
+            @Override
+            public void start(@NonNull final Promise promise) {
+                powerAuth.fetchActivationStatusWithCallback(getContext(), new IActivationStatusListener() {
+                    @Override
+                    public void onActivationStatusSucceed(ActivationStatus status) {
+                        trace.setActivationState(status.state);
+                        WritableMap map = Arguments.createMap();
+                        map.putString("state", PowerAuthRNModule.getStatusCode(status.state));
+                        map.putInt("failCount", status.failCount);
+                        map.putInt("maxFailCount", status.maxFailCount);
+                        map.putInt("remainingAttempts", status.getRemainingAttempts());
+                        promise.resolve(map);
+                    }
+
+                    @Override
+                    public void onActivationStatusFailed(Throwable t) {
+                        ErrorTable.reject(promise, t);
+                    }
+                });
+            }
+        };
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import io.getlime.security.powerauth.sdk.PowerAuthAuthentication;
+
+/**
+ * Request body collected for a signature over several bridge calls.
+ * <p>
+ * The PowerAuth SDK needs the whole body to calculate the signature, so the body is kept in memory
+ * on the native side. Chunks don't have to be concatenated in Javascript, and files are read
+ * directly into the buffer.
+ * <p>
+ * When the expected body size is known up front, the buffer is allocated once with that size and
+ * handed to the SDK without another copy. Otherwise the buffer grows by exactly the size of each
+ * chunk, so it never holds unused space, but every chunk after the first one copies the body
+ * collected so far. Either way, the body is never held more than twice, and only while a chunk
+ * is being appended.
+ * <p>
+ * A session that is not used for {@link #IDLE_TIMEOUT_MILLIS} expires, so the body of
+ * a signature that Javascript never finished or cancelled doesn't stay in memory.
+ */
+class SignatureSession {
+
+    /** Maximum size of the body, to protect the application from running out of memory. */
+    static final int MAX_BODY_SIZE = 64 * 1024 * 1024;
+
+    /** Time after the last use when the session expires. */
+    static final long IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    final PowerAuthAuthentication authentication;
+    final String method;
+    final String uriId;
+
+    private byte[] buffer;
+    private int size;
+    private char pendingHighSurrogate;
+    private volatile long lastAccess;
+
+    /**
+     * @param authentication authentication for the signature
+     * @param method HTTP method
+     * @param uriId URI identifier
+     * @param expectedBodySize expected size of the body in bytes, or 0 when it's not known
+     * @throws IllegalArgumentException when the expected size exceeds {@link #MAX_BODY_SIZE}
+     */
+    SignatureSession(@NonNull PowerAuthAuthentication authentication, @NonNull String method, @NonNull String uriId, int expectedBodySize) throws IllegalArgumentException {
+        if (expectedBodySize > MAX_BODY_SIZE) {
+            throw new IllegalArgumentException("Body is too large.");
+        }
+        this.authentication = authentication;
+        this.method = method;
+        this.uriId = uriId;
+        this.lastAccess = SystemClock.elapsedRealtime();
+        if (expectedBodySize > 0) {
+            buffer = new byte[expectedBodySize];
+        }
+    }
+
+    /**
+     * Marks the session as used now.
+     */
+    void touch() {
+        lastAccess = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * @param now current {@link SystemClock#elapsedRealtime()}
+     * @return true when the session was not used for longer than {@link #IDLE_TIMEOUT_MILLIS}
+     */
+    boolean isExpired(long now) {
+        return now - lastAccess > IDLE_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * Appends bytes to the body.
+     *
+     * @param chunk bytes to append
+     */
+    synchronized void append(@NonNull byte[] chunk) {
+        ensureCapacity(chunk.length);
+        System.arraycopy(chunk, 0, buffer, size, chunk.length);
+        size += chunk.length;
+    }
+
+    /**
+     * Appends UTF-8 encoded text to the body. A high surrogate at the end of the chunk is kept
+     * until the next chunk, so a surrogate pair split between two chunks is encoded as one
+     * code point and the body is the same as if the text was appended at once.
+     *
+     * @param chunk text to append
+     */
+    synchronized void appendText(@NonNull String chunk) {
+        String text = pendingHighSurrogate != 0 ? pendingHighSurrogate + chunk : chunk;
+        pendingHighSurrogate = 0;
+        int length = text.length();
+        if (length > 0 && Character.isHighSurrogate(text.charAt(length - 1))) {
+            pendingHighSurrogate = text.charAt(length - 1);
+            text = text.substring(0, length - 1);
+        }
+        append(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends the content of a local file to the body.
+     *
+     * @param context Android context, used to open {@code content://} URIs
+     * @param fileUri {@code file://} or {@code content://} URI, or an absolute path
+     * @throws IOException when the file cannot be read
+     */
+    synchronized void appendFile(@NonNull Context context, @NonNull String fileUri) throws IOException {
+        flushPendingText();
+        Uri uri = Uri.parse(fileUri);
+        ParcelFileDescriptor pfd = null;
+        FileInputStream stream;
+        if ("content".equals(uri.getScheme())) {
+            pfd = context.getContentResolver().openFileDescriptor(uri, "r");
+            if (pfd == null) {
+                throw new IOException("Unable to open " + fileUri);
+            }
+            stream = new FileInputStream(pfd.getFileDescriptor());
+        } else {
+            stream = new FileInputStream(uri.getScheme() == null ? fileUri : uri.getPath());
+        }
+        try {
+            FileChannel channel = stream.getChannel();
+            long length = channel.size();
+            if (length > MAX_BODY_SIZE) {
+                throw new IOException("File is too large.");
+            }
+            ensureCapacity((int) length);
+            ByteBuffer target = ByteBuffer.wrap(buffer, size, (int) length);
+            while (target.hasRemaining()) {
+                if (channel.read(target) < 0) {
+                    break;
+                }
+            }
+            size = target.position();
+        } finally {
+            stream.close();
+            if (pfd != null) {
+                pfd.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the collected body. The buffer is returned as it is, unless the body is shorter than
+     * the expected size, in which case it has to be copied once more.
+     *
+     * @return collected body, or null when nothing was appended
+     */
+    @Nullable
+    synchronized byte[] getBody() {
+        flushPendingText();
+        if (size == 0) {
+            return null;
+        }
+        if (buffer.length != size) {
+            byte[] exact = new byte[size];
+            System.arraycopy(buffer, 0, exact, 0, size);
+            buffer = exact;
+        }
+        return buffer;
+    }
+
+    /**
+     * Appends a high surrogate left over from the last text chunk, encoded the same way
+     * as an unpaired surrogate in a whole string.
+     */
+    private void flushPendingText() {
+        if (pendingHighSurrogate != 0) {
+            byte[] bytes = String.valueOf(pendingHighSurrogate).getBytes(StandardCharsets.UTF_8);
+            pendingHighSurrogate = 0;
+            append(bytes);
+        }
+    }
+
+    private void ensureCapacity(int additional) {
+        long required = (long) size + additional;
+        if (required > MAX_BODY_SIZE) {
+            throw new IllegalArgumentException("Body is too large.");
+        }
+        if (buffer == null) {
+            buffer = new byte[(int) required];
+        } else if (required > buffer.length) {
+            byte[] bigger = new byte[(int) required];
+            System.arraycopy(buffer, 0, bigger, 0, size);
+            buffer = bigger;
+        }
+    }
+}
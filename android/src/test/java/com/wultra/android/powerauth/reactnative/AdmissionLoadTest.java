@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load test of the module's concurrency code against a local server stand-in.
+ * Runs offline, the report is printed to the standard output. The test is in the {@link LoadTest}
+ * category, so it doesn't run with the other unit tests.
+ */
+@Category(LoadTest.class)
+public class AdmissionLoadTest {
+
+    private static final int CALLS = 5000;
+    private static final int THREADS = 64;
+    private static final long TIMEOUT_SECONDS = 120;
+
+    private PowerAuthServerStandIn server;
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void concurrentCallsRespectLimitAndSettleOnce() throws Exception {
+        server = new PowerAuthServerStandIn(2, 0);
+        server.start();
+        AdmissionController admission = new AdmissionController(AdmissionController.DEFAULT_MAX_CONCURRENT_OPERATIONS);
+        OperationTrace trace = new OperationTrace(OperationTrace.DEFAULT_CAPACITY);
+
+        LoadTestDriver.Report report = new LoadTestDriver(server, admission, trace).run(CALLS, THREADS, TIMEOUT_SECONDS);
+        System.out.println("No failures: " + report);
+
+        assertEquals("All calls settled", CALLS, report.settled);
+        assertEquals("No call settled twice", 0, report.settledTwice);
+        assertEquals("No errors", 0, report.errors);
+        assertTrue("Concurrency limit respected", report.serverMaxConcurrency <= admission.getMaxConcurrentOperations());
+        assertEquals("Every call reached the server or was coalesced", CALLS, report.serverRequests + report.coalesced);
+        assertEquals("Nothing left in flight", 0, admission.getInFlightCount());
+        assertEquals("Nothing left in the queue", 0, admission.getQueuedCount());
+        String json = trace.exportJson();
+        assertTrue("Trace recorded the calls", json.contains("\"entries\":[["));
+        assertTrue("Trace marks coalesced calls", json.contains(",true,"));
+    }
+
+    @Test
+    public void failuresAreReportedToAllCoalescedCallers() throws Exception {
+        server = new PowerAuthServerStandIn(2, 20);
+        server.start();
+        AdmissionController admission = new AdmissionController(AdmissionController.DEFAULT_MAX_CONCURRENT_OPERATIONS);
+        OperationTrace trace = new OperationTrace(OperationTrace.DEFAULT_CAPACITY);
+
+        LoadTestDriver.Report report = new LoadTestDriver(server, admission, trace).run(CALLS, THREADS, TIMEOUT_SECONDS);
+        System.out.println("Every 20th request fails: " + report);
+
+        assertEquals("All calls settled", CALLS, report.settled);
+        assertEquals("No call settled twice", 0, report.settledTwice);
+        assertTrue("Failures reached the callers", report.errors >= server.getFailureCount());
+        assertEquals("Nothing left in flight", 0, admission.getInFlightCount());
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.getlime.security.powerauth.sdk.PowerAuthAuthentication;
+
+/**
+ * Runs many concurrent simulated module calls through {@link AdmissionController},
+ * {@link CompletionPromise.Group} and {@link OperationTrace}, against {@link PowerAuthServerStandIn}.
+ * <p>
+ * Each call is submitted through {@link AdmissionPolicy}, like in {@link PowerAuthRNModule}, so it
+ * gets the same coalescing key and priority. Only the SDK call is replaced by a plain HTTP request
+ * to the stand-in.
+ */
+class LoadTestDriver {
+
+    /**
+     * Result of one run.
+     */
+    static class Report {
+        int calls;
+        int settled;
+        int settledTwice;
+        int errors;
+        int serverRequests;
+        int serverMaxConcurrency;
+        long coalesced;
+        long durationNanos;
+        double p50Millis;
+        double p90Millis;
+        double p99Millis;
+
+        double getThroughput() {
+            return settled / (durationNanos / 1e9);
+        }
+
+        double getErrorRate() {
+            return calls == 0 ? 0 : (double) errors / calls;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "calls=%d settled=%d errors=%d (%.2f%%) throughput=%.0f calls/s latency p50=%.1fms p90=%.1fms p99=%.1fms server requests=%d (max %d at once) coalesced=%d",
+                    calls, settled, errors, getErrorRate() * 100, getThroughput(), p50Millis, p90Millis, p99Millis,
+                    serverRequests, serverMaxConcurrency, coalesced);
+        }
+    }
+
+    private final PowerAuthServerStandIn server;
+    private final AdmissionController admission;
+    private final OperationTrace trace;
+
+    LoadTestDriver(@NonNull PowerAuthServerStandIn server, @NonNull AdmissionController admission, @NonNull OperationTrace trace) {
+        this.server = server;
+        this.admission = admission;
+        this.trace = trace;
+    }
+
+    /**
+     * Submits the calls from the given number of threads and waits until all of them settle.
+     *
+     * @param calls number of calls
+     * @param threads number of threads submitting the calls
+     * @param timeoutSeconds maximum time to wait for the calls
+     * @return report of the run
+     */
+    @NonNull
+    Report run(final int calls, int threads, long timeoutSeconds) throws InterruptedException {
+        final long[] latencies = new long[calls];
+        final AtomicInteger settled = new AtomicInteger();
+        final AtomicInteger settledTwice = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(calls);
+        final ExecutorService network = Executors.newFixedThreadPool(8);
+        ExecutorService submitters = Executors.newFixedThreadPool(threads);
+        final int requestsBefore = server.getRequestCount();
+        final long coalescedBefore = admission.getCoalescedCount();
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            final int index = i;
+            submitters.execute(new Runnable() {
+                @Override
+                public void run() {
+                    CompletionPromise result = new CompletionPromise() {
+                        private final long submittedAt = System.nanoTime();
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        protected void onResolve(@Nullable Object value) {
+                            finish(false);
+                        }
+
+                        @Override
+                        protected void onReject(@Nullable String code, @Nullable String message, @Nullable Throwable throwable, @Nullable WritableMap userInfo) {
+                            finish(true);
+                        }
+
+                        private void finish(boolean failed) {
+                            if (count.incrementAndGet() > 1) {
+                                settledTwice.incrementAndGet();
+                                return;
+                            }
+                            latencies[index] = System.nanoTime() - submittedAt;
+                            if (failed) {
+                                errors.incrementAndGet();
+                            }
+                            settled.incrementAndGet();
+                            done.countDown();
+                        }
+                    };
+                    submit(index, result, network);
+                }
+            });
+        }
+        boolean finished = done.await(timeoutSeconds, TimeUnit.SECONDS);
+        long duration = System.nanoTime() - start;
+        submitters.shutdown();
+        network.shutdown();
+        network.awaitTermination(timeoutSeconds, TimeUnit.SECONDS);
+
+        Report report = new Report();
+        report.calls = calls;
+        report.settled = settled.get();
+        report.settledTwice = settledTwice.get();
+        report.errors = errors.get();
+        report.serverRequests = server.getRequestCount() - requestsBefore;
+        report.serverMaxConcurrency = server.getMaxActiveCount();
+        report.coalesced = admission.getCoalescedCount() - coalescedBefore;
+        report.durationNanos = duration;
+        if (finished) {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            report.p50Millis = percentile(sorted, 0.50);
+            report.p90Millis = percentile(sorted, 0.90);
+            report.p99Millis = percentile(sorted, 0.99);
+        }
+        return report;
+    }
+
+    /**
+     * Submits one call. The mix follows the typical use of the module: mostly status refreshes,
+     * then password validations, with occasional activation, password change, vault unlock
+     * and recovery data requests.
+     */
+    private void submit(int index, @NonNull Promise result, @NonNull ExecutorService network) {
+        switch (index % 10) {
+            case 0: case 1: case 2: case 3: {
+                Promise promise = trace.begin("fetchActivationStatus", result);
+                AdmissionPolicy.fetchActivationStatus(admission, promise, request(PowerAuthServerStandIn.ACTIVATION_STATUS, network));
+                break;
+            }
+            case 4: case 5: {
+                Promise promise = trace.begin("validatePassword", result);
+                AdmissionPolicy.validatePassword(admission, "password" + (index % 3), promise, request(PowerAuthServerStandIn.SIGNATURE_VALIDATE, network));
+                break;
+            }
+            case 6: {
+                Promise promise = trace.begin("changePassword", result);
+                AdmissionPolicy.changePassword(admission, "password", "password" + index, promise, request(PowerAuthServerStandIn.SIGNATURE_VALIDATE, network));
+                break;
+            }
+            case 7: {
+                Promise promise = trace.begin("createActivation", result);
+                AdmissionPolicy.interactive(admission, promise, request(PowerAuthServerStandIn.ACTIVATION_CREATE, network));
+                break;
+            }
+            case 8: {
+                Promise promise = trace.begin("fetchEncryptionKey", result);
+                AdmissionPolicy.interactive(admission, promise, request(PowerAuthServerStandIn.VAULT_UNLOCK, network));
+                break;
+            }
+            default: {
+                Promise promise = trace.begin("activationRecoveryData", result);
+                PowerAuthAuthentication auth = new PowerAuthAuthentication();
+                auth.usePossession = true;
+                auth.usePassword = "password" + (index % 2);
+                AdmissionPolicy.activationRecoveryData(admission, auth, promise, request(PowerAuthServerStandIn.VAULT_UNLOCK, network));
+                break;
+            }
+        }
+    }
+
+    /**
+     * Creates an operation that posts to the stand-in on a network thread, like the SDK does.
+     */
+    @NonNull
+    private AdmissionController.Operation request(final String path, final ExecutorService network) {
+        return new AdmissionController.Operation() {
+            @Override
+            public void start(@NonNull final Promise promise) {
+                network.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            int status = post(server.getUrl(path));
+                            if (status == 200) {
+                                promise.resolve(true);
+                            } else {
+                                promise.reject("PA2ErrorCodeNetworkError", "HTTP " + status);
+                            }
+                        } catch (IOException e) {
+                            promise.reject("PA2ErrorCodeNetworkError", e.getMessage(), e);
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    private static int post(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream os = connection.getOutputStream()) {
+            os.write("{\"requestObject\":{}}".getBytes(StandardCharsets.UTF_8));
+        }
+        int status = connection.getResponseCode();
+        InputStream is = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (is != null) {
+            byte[] buffer = new byte[1024];
+            while (is.read(buffer) >= 0) {
+                // Read the whole response, so the connection can be reused.
+            }
+            is.close();
+        }
+        return status;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 Wultra s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.wultra.android.powerauth.reactnative;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process HTTP stand-in for the PowerAuth server, listening on the loopback interface.
+ * <p>
+ * It serves the endpoints used by the module's network operations with canned responses,
+ * after a configurable delay. Every {@code failEvery}-th request fails with HTTP 503.
+ * The responses are not cryptographically valid. The real SDK needs its native core, which
+ * doesn't run on a plain JVM, so the stand-in is meant for driving the module's own
+ * concurrency code, not the SDK.
+ */
+class PowerAuthServerStandIn {
+
+    static final String ACTIVATION_CREATE = "/pa/v3/activation/create";
+    static final String ACTIVATION_STATUS = "/pa/v3/activation/status";
+    static final String VAULT_UNLOCK = "/pa/v3/vault/unlock";
+    static final String SIGNATURE_VALIDATE = "/pa/v3/signature/validate";
+    static final String TOKEN_CREATE = "/pa/v3/token/create";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final int failEvery;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger failureCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger maxActiveCount = new AtomicInteger();
+
+    /**
+     * @param latencyMillis delay before each response
+     * @param failEvery every n-th request fails, 0 to never fail
+     */
+    PowerAuthServerStandIn(long latencyMillis, int failEvery) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.failEvery = failEvery;
+        // Without this, small responses are delayed by Nagle's algorithm and dominate the latency.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newFixedThreadPool(32);
+        server.setExecutor(executor);
+        register(ACTIVATION_CREATE, "{\"status\":\"OK\",\"responseObject\":{\"activationData\":\"c3RhbmQtaW4=\"}}");
+        register(ACTIVATION_STATUS, "{\"status\":\"OK\",\"responseObject\":{\"activationId\":\"00000000-0000-0000-0000-000000000000\",\"encryptedStatusBlob\":\"c3RhbmQtaW4=\"}}");
+        register(VAULT_UNLOCK, "{\"status\":\"OK\",\"responseObject\":{\"encryptedVaultEncryptionKey\":\"c3RhbmQtaW4=\"}}");
+        register(SIGNATURE_VALIDATE, "{\"status\":\"OK\"}");
+        register(TOKEN_CREATE, "{\"status\":\"OK\",\"responseObject\":{\"encryptedData\":\"c3RhbmQtaW4=\",\"mac\":\"c3RhbmQtaW4=\"}}");
+    }
+
+    private void register(String path, final String body) {
+        final byte[] okBody = body.getBytes(StandardCharsets.UTF_8);
+        final byte[] errorBody = "{\"status\":\"ERROR\",\"responseObject\":{\"code\":\"ERR_GENERIC\"}}".getBytes(StandardCharsets.UTF_8);
+        server.createContext(path, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int active = activeCount.incrementAndGet();
+                while (true) {
+                    int max = maxActiveCount.get();
+                    if (active <= max || maxActiveCount.compareAndSet(max, active)) {
+                        break;
+                    }
+                }
+                boolean counted = true;
+                try {
+                    drain(exchange.getRequestBody());
+                    if (latencyMillis > 0) {
+                        Thread.sleep(latencyMillis);
+                    }
+                    // Leave before responding, the client may start the next request right after.
+                    activeCount.decrementAndGet();
+                    counted = false;
+                    int n = requestCount.incrementAndGet();
+                    boolean fail = failEvery > 0 && n % failEvery == 0;
+                    if (fail) {
+                        failureCount.incrementAndGet();
+                    }
+                    byte[] response = fail ? errorBody : okBody;
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(fail ? 503 : 200, response.length);
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(response);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    if (counted) {
+                        activeCount.decrementAndGet();
+                    }
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    private static void drain(InputStream is) throws IOException {
+        byte[] buffer = new byte[1024];
+        while (is.read(buffer) >= 0) {
+            // Discard the request body.
+        }
+        is.close();
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() throws InterruptedException {
+        server.stop(0);
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param path endpoint path
+     * @return full URL of the endpoint
+     */
+    String getUrl(String path) {
+        return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * @return number of requests the stand-in has answered
+     */
+    int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return number of requests answered with an error
+     */
+    int getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * @return the highest number of requests processed at the same time
+     */
+    int getMaxActiveCount() {
+        return maxActiveCount.get();
+    }
+}
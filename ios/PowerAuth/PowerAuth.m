@@ -18,15 +18,72 @@
 #import "UIKit/UIKit.h"
 
 #import <React/RCTConvert.h>
+#import <React/RCTInvalidating.h>
 
 #import <PowerAuth2/PowerAuthSDK.h>
 #import <PowerAuth2/PA2ErrorConstants.h>
 #import <PowerAuth2/PA2ClientSslNoValidationStrategy.h>
+#import <PowerAuth2/PA2Keychain.h>
+
+/// Time after the last use when a signature session expires.
+static const NSTimeInterval kSignatureSessionIdleTimeout = 5 * 60;
+
+/// Request body collected for a signature over several bridge calls.
+@interface PowerAuthSignatureSession : NSObject
+@property (nonatomic, strong) PowerAuthAuthentication *authentication;
+@property (nonatomic, strong) NSString *method;
+@property (nonatomic, strong) NSString *uriId;
+@property (nonatomic, strong) NSMutableData *body;
+/// High surrogate from the end of the last text chunk, waiting for the rest of the pair. Zero if none.
+@property (nonatomic, assign) unichar pendingHighSurrogate;
+/// System uptime of the last use.
+@property (nonatomic, assign) NSTimeInterval lastAccess;
+/// Appends UTF-8 encoded text to the body. Returns NO when the text contains an unpaired surrogate.
+- (BOOL)appendText:(NSString*)chunk;
+@end
+
+@implementation PowerAuthSignatureSession
+
+- (BOOL)appendText:(NSString*)chunk
+{
+    NSString *text = chunk;
+    if (self.pendingHighSurrogate != 0) {
+        unichar pending = self.pendingHighSurrogate;
+        text = [[NSString stringWithCharacters:&pending length:1] stringByAppendingString:chunk];
+        self.pendingHighSurrogate = 0;
+    }
+    // Keep a trailing high surrogate for the next chunk, a pair split between chunks must be encoded as one code point.
+    if (text.length > 0 && CFStringIsSurrogateHighCharacter([text characterAtIndex:text.length - 1])) {
+        self.pendingHighSurrogate = [text characterAtIndex:text.length - 1];
+        text = [text substringToIndex:text.length - 1];
+    }
+    NSData *data = [text dataUsingEncoding:NSUTF8StringEncoding];
+    if (data == nil) {
+        return NO;
+    }
+    if (self.body == nil) {
+        self.body = [NSMutableData dataWithCapacity:data.length];
+    }
+    [self.body appendData:data];
+    return YES;
+}
+
+@end
+
+@interface PowerAuth () <RCTInvalidating>
+@property (nonatomic, strong) NSMutableDictionary<NSString*, PowerAuthSignatureSession*> *signatureSessions;
+@end
 
 @implementation PowerAuth
 
 RCT_EXPORT_MODULE(PowerAuth);
 
+- (void)invalidate
+{
+    // Javascript that started the sessions is gone, nobody can finish them.
+    [self.signatureSessions removeAllObjects];
+}
+
 RCT_REMAP_METHOD(isConfigured,
                  isConfiguredResolve:(RCTPromiseResolveBlock)resolve
                  isConfiguredReject:(RCTPromiseRejectBlock)reject)
@@ -288,6 +345,150 @@ RCT_REMAP_METHOD(requestSignature,
     }
 }
 
+RCT_REMAP_METHOD(beginSignature,
+                 beginSignatureWithAuthentication:(NSDictionary*)authDict
+                 method:(nonnull NSString*)method
+                 uriId:(nonnull NSString*)uriId
+                 bodySize:(NSInteger)bodySize
+                 beginSignatureResolver:(RCTPromiseResolveBlock)resolve
+                 beginSignatureReject:(RCTPromiseRejectBlock)reject)
+{
+    if (self.signatureSessions == nil) {
+        self.signatureSessions = [NSMutableDictionary dictionary];
+    }
+    [self removeExpiredSignatureSessions];
+    if (self.signatureSessions.count >= 8) {
+        reject(@"PA2ReactNativeError", @"Too many signature sessions.", nil);
+        return;
+    }
+    PowerAuthSignatureSession *session = [[PowerAuthSignatureSession alloc] init];
+    session.authentication = [self constructAuthenticationFromDictionary:authDict];
+    session.method = method;
+    session.uriId = uriId;
+    if (bodySize > 0) {
+        session.body = [NSMutableData dataWithCapacity:(NSUInteger)bodySize];
+    }
+    session.lastAccess = [NSProcessInfo processInfo].systemUptime;
+    NSString *sessionId = [[NSUUID UUID] UUIDString];
+    self.signatureSessions[sessionId] = session;
+    resolve(sessionId);
+}
+
+RCT_REMAP_METHOD(appendBody,
+                 appendBodyToSession:(nonnull NSString*)sessionId
+                 chunk:(nonnull NSString*)chunk
+                 appendBodyResolver:(RCTPromiseResolveBlock)resolve
+                 appendBodyReject:(RCTPromiseRejectBlock)reject)
+{
+    PowerAuthSignatureSession *session = [self signatureSessionForId:sessionId];
+    if (session == nil) {
+        reject(@"PA2ReactNativeError", @"Invalid signature session.", nil);
+        return;
+    }
+    if (![session appendText:chunk]) {
+        [self.signatureSessions removeObjectForKey:sessionId];
+        reject(@"PA2ReactNativeError", @"Body is not a valid UTF-16 string.", nil);
+        return;
+    }
+    resolve(nil);
+}
+
+RCT_REMAP_METHOD(appendBodyFromFile,
+                 appendBodyToSession:(nonnull NSString*)sessionId
+                 fileUri:(nonnull NSString*)fileUri
+                 appendBodyFromFileResolver:(RCTPromiseResolveBlock)resolve
+                 appendBodyFromFileReject:(RCTPromiseRejectBlock)reject)
+{
+    PowerAuthSignatureSession *session = [self signatureSessionForId:sessionId];
+    if (session == nil) {
+        reject(@"PA2ReactNativeError", @"Invalid signature session.", nil);
+        return;
+    }
+    if (session.pendingHighSurrogate != 0) {
+        // The previous text chunk ended with an unpaired surrogate, which can't be encoded.
+        [self.signatureSessions removeObjectForKey:sessionId];
+        reject(@"PA2ReactNativeError", @"Body is not a valid UTF-16 string.", nil);
+        return;
+    }
+    NSURL *url = [fileUri hasPrefix:@"file:"] ? [NSURL URLWithString:fileUri] : [NSURL fileURLWithPath:fileUri];
+    NSError *error = nil;
+    NSData *data = [NSData dataWithContentsOfURL:url options:NSDataReadingMappedIfSafe error:&error];
+    if (data == nil) {
+        [self.signatureSessions removeObjectForKey:sessionId];
+        reject(@"PA2ReactNativeError", @"Failed to read body from file.", error);
+        return;
+    }
+    if (session.body == nil) {
+        session.body = [NSMutableData dataWithCapacity:data.length];
+    }
+    [session.body appendData:data];
+    resolve(nil);
+}
+
+RCT_REMAP_METHOD(finishSignature,
+                 finishSignatureWithSession:(nonnull NSString*)sessionId
+                 finishSignatureResolver:(RCTPromiseResolveBlock)resolve
+                 finishSignatureReject:(RCTPromiseRejectBlock)reject)
+{
+    PowerAuthSignatureSession *session = [self signatureSessionForId:sessionId];
+    if (session == nil) {
+        reject(@"PA2ReactNativeError", @"Invalid signature session.", nil);
+        return;
+    }
+    [self.signatureSessions removeObjectForKey:sessionId];
+    if (session.pendingHighSurrogate != 0) {
+        // The last text chunk ended with an unpaired surrogate, which can't be encoded.
+        reject(@"PA2ReactNativeError", @"Body is not a valid UTF-16 string.", nil);
+        return;
+    }
+    
+    NSError* error = nil;
+    PA2AuthorizationHttpHeader* signature = [[PowerAuthSDK sharedInstance] requestSignatureWithAuthentication:session.authentication method:session.method uriId:session.uriId body:session.body error:&error];
+    
+    if (error) {
+        reject([self getErrorCodeFromError:error], error.localizedDescription, error);
+    } else {
+        NSDictionary *response = @{
+            @"key": signature.key,
+            @"value": signature.value
+        };
+        resolve(response);
+    }
+}
+
+RCT_EXPORT_METHOD(cancelSignature:(nonnull NSString*)sessionId)
+{
+    [self.signatureSessions removeObjectForKey:sessionId];
+}
+
+/// Returns the session if it's not expired, and marks it as used.
+- (nullable PowerAuthSignatureSession*)signatureSessionForId:(NSString*)sessionId
+{
+    PowerAuthSignatureSession *session = self.signatureSessions[sessionId];
+    if (session == nil) {
+        return nil;
+    }
+    NSTimeInterval now = [NSProcessInfo processInfo].systemUptime;
+    if (now - session.lastAccess > kSignatureSessionIdleTimeout) {
+        [self.signatureSessions removeObjectForKey:sessionId];
+        return nil;
+    }
+    session.lastAccess = now;
+    return session;
+}
+
+- (void)removeExpiredSignatureSessions
+{
+    NSTimeInterval now = [NSProcessInfo processInfo].systemUptime;
+    NSMutableArray<NSString*> *expired = [NSMutableArray array];
+    [self.signatureSessions enumerateKeysAndObjectsUsingBlock:^(NSString *key, PowerAuthSignatureSession *session, BOOL *stop) {
+        if (now - session.lastAccess > kSignatureSessionIdleTimeout) {
+            [expired addObject:key];
+        }
+    }];
+    [self.signatureSessions removeObjectsForKeys:expired];
+}
+
 RCT_REMAP_METHOD(offlineSignature,
                  offlineSignatureWithAuthentication:(NSDictionary*)authDict
                  uriId:(NSString*)uriId
@@ -365,6 +566,12 @@ RCT_EXPORT_METHOD(removeBiometryFactor:(RCTPromiseResolveBlock)resolve
     resolve([[NSNumber alloc] initWithBool:[[PowerAuthSDK sharedInstance] removeBiometryFactor]]);
 }
 
+RCT_EXPORT_METHOD(isBiometryAvailable:(RCTPromiseResolveBlock)resolve
+                  reject:(RCTPromiseRejectBlock)reject)
+{
+    resolve([[NSNumber alloc] initWithBool:[PA2Keychain canUseBiometricAuthentication]]);
+}
+
 RCT_EXPORT_METHOD(fetchEncryptionKey:(NSDictionary*)authDict
                   index:(NSInteger)index
                   resolve:(RCTPromiseResolveBlock)resolve